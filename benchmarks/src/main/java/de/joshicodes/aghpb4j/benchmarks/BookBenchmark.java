@@ -0,0 +1,73 @@
+package de.joshicodes.aghpb4j.benchmarks;
+
+import de.joshicodes.aghpb4j.AGHPB;
+import de.joshicodes.aghpb4j.objects.AGHPBook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency of {@link AGHPB#retrieveBook(int, AGHPBook.BookImageType)} and {@link AGHPB#retrieveRandomBook()},
+ * including the transfer of the image and the parsing of the Book-* headers.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BookBenchmark {
+
+    @Param({ "16384", "262144" })
+    public int imageSize;
+
+    private StubServer server;
+    private AGHPB aghpb;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = new StubServer(imageSize);
+        aghpb = AGHPB.builder().setUrl(server.getUrl()).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        aghpb.close();
+        server.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Threads(8)
+    public AGHPBook retrieveBookThroughput() {
+        return aghpb.retrieveBook(ThreadLocalRandom.current().nextInt(StubServer.BOOK_COUNT)).execute();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public AGHPBook retrieveBookLatency() {
+        return aghpb.retrieveBook(ThreadLocalRandom.current().nextInt(StubServer.BOOK_COUNT)).execute();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Threads(8)
+    public AGHPBook retrieveRandomBook() {
+        return aghpb.retrieveRandomBook().execute();
+    }
+
+}
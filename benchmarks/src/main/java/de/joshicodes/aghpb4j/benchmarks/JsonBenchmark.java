@@ -0,0 +1,129 @@
+package de.joshicodes.aghpb4j.benchmarks;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import de.joshicodes.aghpb4j.AGHPB;
+import de.joshicodes.aghpb4j.action.RestAction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The JSON paths of {@link RestAction.RestResponse} without any network, and the JSON endpoints against the stub server.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JsonBenchmark {
+
+    private StubServer server;
+    private AGHPB aghpb;
+    private RestAction.RestResponse<String> info;
+    private RestAction.RestResponse<String> categories;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = new StubServer(1024);
+        aghpb = AGHPB.builder().setUrl(server.getUrl()).build();
+        info = new RestAction.RestResponse<>(new FixedResponse("{\"book_count\":2000,\"api_version\":\"1.3\"}"), String.class);
+        categories = new RestAction.RestResponse<>(new FixedResponse("[\"Java\",\"C\",\"C++\",\"Python\",\"Rust\",\"Go\",\"JavaScript\",\"Haskell\"]"), String.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        aghpb.close();
+        server.close();
+    }
+
+    @Benchmark
+    public JsonObject parseObject() {
+        return info.getAsJsonObject();
+    }
+
+    @Benchmark
+    public JsonElement parseArray() {
+        return categories.getAsJsonElement();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public AGHPB.ApiInfo retrieveInfo() {
+        return aghpb.retrieveInfo().execute();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<String> retrieveAllCategories() {
+        return aghpb.retrieveAllCategories().execute();
+    }
+
+    /**
+     * A 200 response with a fixed body, which is never sent over the network.
+     */
+    private record FixedResponse(String body) implements HttpResponse<String> {
+
+        private static final HttpRequest REQUEST = HttpRequest.newBuilder(URI.create("http://127.0.0.1/")).build();
+        private static final HttpHeaders HEADERS = HttpHeaders.of(Map.of("Content-Type", List.of("application/json")), (name, value) -> true);
+
+        @Override
+        public int statusCode() {
+            return 200;
+        }
+
+        @Override
+        public HttpRequest request() {
+            return REQUEST;
+        }
+
+        @Override
+        public Optional<HttpResponse<String>> previousResponse() {
+            return Optional.empty();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return HEADERS;
+        }
+
+        @Override
+        public Optional<SSLSession> sslSession() {
+            return Optional.empty();
+        }
+
+        @Override
+        public URI uri() {
+            return REQUEST.uri();
+        }
+
+        @Override
+        public HttpClient.Version version() {
+            return HttpClient.Version.HTTP_1_1;
+        }
+
+    }
+
+}
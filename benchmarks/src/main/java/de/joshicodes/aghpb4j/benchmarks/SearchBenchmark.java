@@ -0,0 +1,66 @@
+package de.joshicodes.aghpb4j.benchmarks;
+
+import de.joshicodes.aghpb4j.AGHPB;
+import de.joshicodes.aghpb4j.objects.AGHPBook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Latency of {@link AGHPB#retrieveSearch(String, int)} for several result sizes, collected into a list and consumed as a stream.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchBenchmark {
+
+    @Param({ "1", "10", "100", "1000" })
+    public int results;
+
+    private StubServer server;
+    private AGHPB aghpb;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = new StubServer(1024);
+        aghpb = AGHPB.builder().setUrl(server.getUrl()).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        aghpb.close();
+        server.close();
+    }
+
+    @Benchmark
+    public List<AGHPBook> searchList() {
+        return aghpb.retrieveSearch("book", results).execute();
+    }
+
+    @Benchmark
+    public void searchStream(final Blackhole blackhole) {
+        try (Stream<AGHPBook> books = aghpb.retrieveSearch("book", results).stream().execute()) {
+            books.forEach(blackhole::consume);
+        }
+    }
+
+}
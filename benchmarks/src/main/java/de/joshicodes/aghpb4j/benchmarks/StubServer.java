@@ -0,0 +1,152 @@
+package de.joshicodes.aghpb4j.benchmarks;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local stand-in for the AGHPB API, so benchmarks run offline and repeatably. <br>
+ * Serves <code>/random</code>, <code>/get/id/{id}</code>, <code>/search</code>, <code>/categories</code>, <code>/info</code> and <code>/nya</code>
+ * with the same Book-* and rate limit headers as the real API. The rate limit is high enough to never throttle a benchmark.
+ */
+public class StubServer implements AutoCloseable {
+
+    public static final int BOOK_COUNT = 2000;
+    public static final String[] CATEGORIES = { "Java", "C", "C++", "Python", "Rust", "Go", "JavaScript", "Haskell" };
+
+    static {
+        // Without TCP_NODELAY, small responses stall for the delayed ACK and every request measures ~40ms
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final byte[] image;
+
+    /**
+     * Starts a stub server on a free port of the loopback interface.
+     * @param imageSize The size of the served images in bytes.
+     * @throws IOException If the server could not be started.
+     */
+    public StubServer(final int imageSize) throws IOException {
+        this.image = new byte[imageSize];
+        new Random(42).nextBytes(image);
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * Returns the url, which can be passed to {@link de.joshicodes.aghpb4j.AGHPB.Builder#setUrl(String)}.
+     * @return The url of this server.
+     */
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            final String path = exchange.getRequestURI().getPath();
+            final Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            final Headers headers = exchange.getResponseHeaders();
+            headers.add("x-ratelimit-limit", "1000000000");
+            headers.add("x-ratelimit-remaining", "999999999");
+            headers.add("x-ratelimit-reset", "60");
+            switch (path) {
+                case "/nya" -> json(exchange, "{\"version\":\"1.3\"}");
+                case "/info" -> json(exchange, "{\"book_count\":" + BOOK_COUNT + ",\"api_version\":\"1.3\"}");
+                case "/categories" -> {
+                    final StringBuilder json = new StringBuilder("[");
+                    for(int i = 0; i < CATEGORIES.length; i++) {
+                        if(i > 0) json.append(',');
+                        json.append('"').append(CATEGORIES[i]).append('"');
+                    }
+                    json(exchange, json.append(']').toString());
+                }
+                case "/search" -> json(exchange, search(Integer.parseInt(query.getOrDefault("limit", "10"))));
+                case "/random" -> image(exchange, new Random().nextInt(BOOK_COUNT));
+                default -> {
+                    if(path.startsWith("/get/id/")) {
+                        image(exchange, Integer.parseInt(path.substring("/get/id/".length())));
+                    } else {
+                        exchange.sendResponseHeaders(404, -1);
+                    }
+                }
+            }
+        }
+    }
+
+    private static String search(final int limit) {
+        final StringBuilder json = new StringBuilder("[");
+        for(int i = 0; i < Math.min(limit, BOOK_COUNT); i++) {
+            if(i > 0) json.append(',');
+            json.append("{\"search_id\":\"").append(i)
+                    .append("\",\"name\":\"Anime Girl Holding Programming Book ").append(i)
+                    .append("\",\"category\":\"").append(CATEGORIES[i % CATEGORIES.length])
+                    .append("\",\"date_added\":\"2023-01-01 00:00:00\",\"commit_url\":\"https://github.com/cat-milk/Anime-Girls-Holding-Programming-Books/commit/").append(hash(i))
+                    .append("\",\"commit_author\":\"Author ").append(i % 50)
+                    .append("\",\"commit_hash\":\"").append(hash(i)).append("\"}");
+        }
+        return json.append(']').toString();
+    }
+
+    private void image(final HttpExchange exchange, final int id) throws IOException {
+        final Headers headers = exchange.getResponseHeaders();
+        headers.add("Content-Type", "image/png");
+        headers.add("Book-Name", "Anime Girl Holding Programming Book " + id);
+        headers.add("Book-Category", CATEGORIES[id % CATEGORIES.length]);
+        headers.add("Book-Date-Added", "2023-01-01 00:00:00");
+        headers.add("Book-Commit-Author", "Author " + (id % 50));
+        headers.add("Book-Commit-Hash", hash(id));
+        headers.add("Book-Commit-Url", "https://github.com/cat-milk/Anime-Girls-Holding-Programming-Books/commit/" + hash(id));
+        headers.add("Book-Search-Id", String.valueOf(id));
+        exchange.sendResponseHeaders(200, image.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(image);
+        }
+    }
+
+    private static void json(final HttpExchange exchange, final String json) throws IOException {
+        final byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String hash(final int id) {
+        return String.format("%040x", (long) id * 2654435761L);
+    }
+
+    private static Map<String, String> parseQuery(final String query) {
+        final Map<String, String> values = new HashMap<>();
+        if(query == null) return values;
+        for(String pair : query.split("&")) {
+            final int index = pair.indexOf('=');
+            if(index < 0) continue;
+            values.put(URLDecoder.decode(pair.substring(0, index), StandardCharsets.UTF_8), URLDecoder.decode(pair.substring(index + 1), StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+}
@@ -3,21 +3,70 @@ package de.joshicodes.aghpb4j;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import de.joshicodes.aghpb4j.action.ImageAction;
+import de.joshicodes.aghpb4j.action.BatchAction;
+import de.joshicodes.aghpb4j.action.BookAction;
 import de.joshicodes.aghpb4j.action.RandomImageAction;
 import de.joshicodes.aghpb4j.action.RestAction;
+import de.joshicodes.aghpb4j.action.SearchAction;
+import de.joshicodes.aghpb4j.cache.DiskImageCache;
+import de.joshicodes.aghpb4j.cache.ImageCache;
+import de.joshicodes.aghpb4j.cache.ResponseCache;
+import de.joshicodes.aghpb4j.flow.RandomBookPublisher;
 import de.joshicodes.aghpb4j.objects.AGHPBook;
+import de.joshicodes.aghpb4j.request.CircuitBreaker;
+import de.joshicodes.aghpb4j.request.CompositeRequestListener;
+import de.joshicodes.aghpb4j.request.EndpointPool;
+import de.joshicodes.aghpb4j.request.HedgingPolicy;
+import de.joshicodes.aghpb4j.request.RateLimiter;
+import de.joshicodes.aghpb4j.request.RequestCoalescer;
+import de.joshicodes.aghpb4j.request.RequestListener;
+import de.joshicodes.aghpb4j.request.RetryPolicy;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProxySelector;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class AGHPB {
+public class AGHPB implements AutoCloseable {
 
     public static final String DEFAULT_URL = "https://api.devgoldy.xyz/aghpb/v1";
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
 
     private final String url;
+    private final HttpClient httpClient;
+    private final Executor executor;
+    private final ExecutionMode executionMode;
+    private final RateLimiter rateLimiter;
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreaker circuitBreaker;
+    private final ImageCache imageCache;
+    private final DiskImageCache diskImageCache;
+    private final RequestCoalescer requestCoalescer;
+    private final ResponseCache responseCache;
+    private final RequestListener requestListener;
+    private final EndpointPool endpointPool;
+    private final HedgingPolicy hedgingPolicy;
+    private final Duration requestTimeout;
+    /**
+     * The executor created by this instance, if no executor was provided. <br>
+     * Will be shut down on {@link #close()}.
+     */
+    private final ExecutorService ownedExecutor;
+    /**
+     * Whether this is the instance returned by {@link #getDefault()}, which cannot be closed.
+     */
+    private final boolean shared;
+    private volatile boolean closed = false;
 
     /**
      * Creates a new AGHPB instance with the default url
@@ -31,7 +80,234 @@ public class AGHPB {
      * @param url The url of the AGHPB API.
      */
     public AGHPB(final String url) {
-        this.url = url;
+        this(new Builder().setUrl(url));
+    }
+
+    private AGHPB(final Builder builder) {
+        this.url = builder.endpointPool != null ? builder.endpointPool.getPrimaryUrl() : builder.url;
+        this.executionMode = builder.executionMode;
+        if(builder.executor != null) {
+            executor = builder.executor;
+            this.ownedExecutor = null;
+        } else {
+            this.ownedExecutor = builder.executionMode == ExecutionMode.VIRTUAL_THREADS ? createVirtualThreadExecutor() : createDefaultExecutor();
+            executor = this.ownedExecutor;
+        }
+        final HttpClient.Builder client = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .version(builder.version)
+                .executor(executor);
+        if(builder.connectTimeout != null) {
+            client.connectTimeout(builder.connectTimeout);
+        }
+        if(builder.proxy != null) {
+            client.proxy(builder.proxy);
+        }
+        this.httpClient = client.build();
+        this.rateLimiter = new RateLimiter(executor);
+        this.retryPolicy = builder.retryPolicy;
+        this.circuitBreaker = builder.circuitBreaker;
+        this.imageCache = builder.imageCache;
+        this.diskImageCache = builder.diskImageCache;
+        this.requestCoalescer = builder.requestCoalescing ? new RequestCoalescer() : null;
+        this.responseCache = builder.responseCache;
+        this.requestListener = builder.requestListeners.isEmpty() ? null : new CompositeRequestListener(builder.requestListeners);
+        this.endpointPool = builder.endpointPool;
+        this.hedgingPolicy = builder.hedgingPolicy;
+        this.requestTimeout = builder.requestTimeout;
+        this.shared = builder.shared;
+        if(endpointPool != null) {
+            endpointPool.bind(httpClient, executor);
+        }
+    }
+
+    /**
+     * Creates a new Builder to configure an AGHPB instance. <br>
+     * Use this, if you want to change the connect timeout, executor, http version or proxy of the underlying HttpClient.
+     * @return A new Builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns an instance with the default settings, which is created on the first call and shared by the whole JVM. <br>
+     * It is used by the deprecated constructors of the actions, which do not take an AGHPB instance.
+     * Calling {@link #close()} on it has no effect.
+     * @return The shared default instance.
+     */
+    public static AGHPB getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Returns the HttpClient, which is shared by all actions created by this instance. <br>
+     * Reusing one client allows connections to be kept alive and HTTP/2 streams to be multiplexed.
+     * @return The shared HttpClient.
+     * @throws IllegalStateException If this instance was already closed.
+     */
+    public HttpClient getHttpClient() {
+        if(closed) {
+            throw new IllegalStateException("This AGHPB instance is closed.");
+        }
+        return httpClient;
+    }
+
+    /**
+     * Returns the executor used by the HttpClient. <br>
+     * This executor is also used to run scheduled retries and the callbacks of asynchronous requests.
+     * @return The executor.
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Returns the RateLimiter, which is shared by all actions of this instance. <br>
+     * Every request waits for a permit of this limiter, before it is sent.
+     * @return The RateLimiter.
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Returns the default RetryPolicy of all actions of this instance.
+     * @return The RetryPolicy.
+     * @see RestAction#useRetryPolicy(RetryPolicy)
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Returns the CircuitBreaker, which is shared by all actions of this instance.
+     * @return The CircuitBreaker, or null if none was set.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Returns the cache for books with image data.
+     * @return The ImageCache, or null if caching is disabled.
+     */
+    public ImageCache getImageCache() {
+        return imageCache;
+    }
+
+    /**
+     * Returns the persistent cache for books with image data.
+     * @return The DiskImageCache, or null if disk caching is disabled.
+     */
+    public DiskImageCache getDiskImageCache() {
+        return diskImageCache;
+    }
+
+    /**
+     * Returns the RequestCoalescer, which lets identical requests in flight share one exchange.
+     * @return The RequestCoalescer, or null if request coalescing is disabled.
+     * @see Builder#setRequestCoalescing(boolean)
+     */
+    public RequestCoalescer getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
+    /**
+     * Returns the cache for the results of the categories, the info, the status and searches.
+     * @return The ResponseCache, or null if response caching is disabled.
+     * @see Builder#setResponseCache(ResponseCache)
+     */
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Returns the listener, which receives the events of all requests of this instance.
+     * @return The listener, or null if no listener was added.
+     * @see Builder#addRequestListener(RequestListener)
+     */
+    public RequestListener getRequestListener() {
+        return requestListener;
+    }
+
+    /**
+     * Returns the pool of endpoints, between which the requests of this instance are balanced.
+     * @return The EndpointPool, or null if all requests are sent to {@link #getUrl()}.
+     * @see Builder#setEndpointPool(EndpointPool)
+     */
+    public EndpointPool getEndpointPool() {
+        return endpointPool;
+    }
+
+    /**
+     * Returns the policy, which decides when slow image requests are hedged.
+     * @return The HedgingPolicy, or null if hedging is disabled.
+     * @see Builder#setHedgingPolicy(HedgingPolicy)
+     */
+    public HedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    /**
+     * Returns the default time, within which a request has to complete, including all retries and rate limit waits.
+     * @return The timeout, or null if requests have no deadline.
+     * @see Builder#setRequestTimeout(Duration)
+     */
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * Returns the execution mode of this instance.
+     * @return The execution mode.
+     * @see Builder#setExecutionMode(ExecutionMode)
+     */
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Returns the url of the AGHPB API used by this instance.
+     * @return The url.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Returns whether this instance was closed.
+     * @return true, if {@link #close()} was called.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Closes this instance. <br>
+     * The executor of the HttpClient will be shut down, if it was created by this instance. An executor provided with {@link Builder#setExecutor(Executor)} will not be shut down. <br>
+     * Actions executed after this call will fail. <br>
+     * The instance returned by {@link #getDefault()} cannot be closed.
+     */
+    @Override
+    public void close() {
+        if(closed || shared) return;
+        closed = true;
+        if(diskImageCache != null) {
+            diskImageCache.flush();
+        }
+        if(ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    private static ExecutorService createDefaultExecutor() {
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "AGHPB-HttpClient-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     /**
@@ -44,7 +320,7 @@ public class AGHPB {
      * @see #retrieveRandomBook(String, AGHPBook.BookImageType)
      */
     public RandomImageAction retrieveRandomBook() {
-        return new RandomImageAction(url);
+        return new RandomImageAction(this);
     }
 
     /**
@@ -89,6 +365,17 @@ public class AGHPB {
         return retrieveRandomBook().withCategory(category).useType(type);
     }
 
+    /**
+     * Creates an endless stream of random books, which are retrieved only as fast as the subscriber requests them. <br>
+     * The amount of requests in flight is bounded by the demand of the subscriber and {@link RandomBookPublisher#setMaxInFlight(int)}.
+     * @param category The category of the books. Can be null for any category.
+     * @param type The image type.
+     * @return A Publisher for random books.
+     */
+    public RandomBookPublisher randomBooks(final String category, final AGHPBook.BookImageType type) {
+        return new RandomBookPublisher(this, category, type);
+    }
+
     /**
      * Retrieves the status of the AGHPB API.
      * @return A RestAction for the status.
@@ -96,13 +383,13 @@ public class AGHPB {
      * @see <a href="https://api.devgoldy.xyz/aghpb/v1/docs#/misc/status_nya_get">API Documentation</a>
      */
     public RestAction<ApiStatus> retrieveStatus() {
-        return new RestAction<>(url + "/nya", "GET", ApiStatus.class, response -> {
+        return new RestAction<>(this, url + "/nya", "GET", ApiStatus.class, response -> {
             final JsonObject json = response.getAsJsonObject();
             if(!json.has("version")) {
                 throw new IllegalStateException("Response does not contain a version field");
             }
             return new ApiStatus(json.get("version").getAsString());
-        });
+        }).useCache(true);
     }
 
     /**
@@ -112,7 +399,7 @@ public class AGHPB {
      * @see <a href="https://api.devgoldy.xyz/aghpb/v1/docs#/books/All_Available_Categories_categories_get">API Documentation</a>
      */
     public RestAction<List<String>> retrieveAllCategories() {
-        return new RestAction<>(url + "/categories", "GET", null, (response) -> {
+        return new RestAction<>(this, url + "/categories", "GET", null, (response) -> {
             final JsonElement json = response.getAsJsonElement();
             if (json == null || !json.isJsonArray()) {
                 throw new IllegalStateException("Response is not a JSON array");
@@ -126,7 +413,7 @@ public class AGHPB {
                 categories.add(element.getAsString());
             }
             return categories;
-        });
+        }).useCache(true).useCompression(true);
     }
 
     /**
@@ -135,7 +422,7 @@ public class AGHPB {
      * @param query The query to search for.
      * @return A RestAction for the search.
      */
-    public RestAction<List<AGHPBook>> retrieveSearch(final String query) {
+    public SearchAction retrieveSearch(final String query) {
         return retrieveSearch(query, null, -1);
     }
 
@@ -146,7 +433,7 @@ public class AGHPB {
      * @param limit The limit of books to retrieve. Must be greater than 0.
      * @return A RestAction for the search.
      */
-    public RestAction<List<AGHPBook>> retrieveSearch(final String query, final int limit) {
+    public SearchAction retrieveSearch(final String query, final int limit) {
         return retrieveSearch(query, null, limit);
     }
 
@@ -157,7 +444,7 @@ public class AGHPB {
      * @param category The category to search in. Can be null.
      * @return A RestAction for the search.
      */
-    public RestAction<List<AGHPBook>> retrieveSearch(final String query, final String category) {
+    public SearchAction retrieveSearch(final String query, final String category) {
         return retrieveSearch(query, category, -1);
     }
 
@@ -169,52 +456,20 @@ public class AGHPB {
      * @param limit The limit of books to retrieve. Must be greater than 0.
      * @return A RestAction for the search.
      */
-    public RestAction<List<AGHPBook>> retrieveSearch(final String query, final String category, final int limit) {
-        final String url = this.url + "/search?query=" + query + (category != null ? "&category=" + category : "") + (limit > 0 ? "&limit=" + limit : "");
-        return new RestAction<>(url, "GET", null, (response) -> {
-            final JsonElement json = response.getAsJsonElement();
-            if(json == null || !json.isJsonArray()) {
-                throw new IllegalStateException("Response is not a JSON array");
-            }
-            final JsonArray array = json.getAsJsonArray();
-            final List<AGHPBook> books = new ArrayList<>();
-            for(JsonElement element : array) {
-                if(!element.isJsonObject()) {
-                    continue;
-                }
-                final JsonObject obj = element.getAsJsonObject();
-                if(
-                        !obj.has("search_id")
-                        || !obj.has("name")
-                        || !obj.has("category")
-                        || !obj.has("date_added")
-                        || !obj.has("commit_url")
-                        || !obj.has("commit_author")
-                        || !obj.has("commit_hash")
-                ) {
-                    continue;
-                }
-                final int searchId = Integer.parseInt(obj.get("search_id").getAsString());
-                final String name = obj.get("name").getAsString();
-                final String category1 = obj.get("category").getAsString();
-                final String dateAdded = obj.get("date_added").getAsString();
-                final String commitUrl = obj.get("commit_url").getAsString();
-                final String commitAuthor = obj.get("commit_author").getAsString();
-                final String commitHash = obj.get("commit_hash").getAsString();
-                books.add(new AGHPBook(null, null, category1, commitAuthor, commitHash, commitUrl, name, searchId));
-            }
-            return books;
-        });
+    public SearchAction retrieveSearch(final String query, final String category, final int limit) {
+        final String url = this.url + "/search?query=" + encode(query) + (category != null ? "&category=" + encode(category) : "") + (limit > 0 ? "&limit=" + limit : "");
+        return new SearchAction(this, url);
     }
 
     /**
      * Retrieves a book from the AGHPB API. <br>
      * This Method is used, to get the image data of a book, which was retrieved by #retrieveSearch(String) and does not contain any image data. <br>
+     * Cached books of another commit than the given book are not returned.
      * @param book The book to retrieve.
      * @return An ImageAction for the book.
      */
-    public ImageAction<AGHPBook> retrieveBook(final AGHPBook book) {
-        return retrieveBook(book.searchId());
+    public BookAction retrieveBook(final AGHPBook book) {
+        return retrieveBook(book, AGHPBook.BookImageType.PNG);
     }
 
     /**
@@ -223,18 +478,19 @@ public class AGHPB {
      * @param searchId The search_id of the book to retrieve.
      * @return An ImageAction for the book.
      */
-    public ImageAction<AGHPBook> retrieveBook(final int searchId) {
+    public BookAction retrieveBook(final int searchId) {
         return retrieveBook(searchId, AGHPBook.BookImageType.PNG);
     }
 
     /**
      * Retrieves a book from the AGHPB API. <br>
+     * Cached books of another commit than the given book are not returned.
      * @param book The book to retrieve.
      * @param type The format of the book.
      * @return An ImageAction for the book.
      */
-    public ImageAction<AGHPBook> retrieveBook(final AGHPBook book, final AGHPBook.BookImageType type) {
-        return retrieveBook(book.searchId(), type);
+    public BookAction retrieveBook(final AGHPBook book, final AGHPBook.BookImageType type) {
+        return new BookAction(this, book.searchId(), type, book.commitHash());
     }
 
     /**
@@ -243,31 +499,42 @@ public class AGHPB {
      * @param type The format of the book.
      * @return An ImageAction for the book.
      */
-    public ImageAction<AGHPBook> retrieveBook(final int searchId, final AGHPBook.BookImageType type) {
-        final String url = this.url + "/get/id/" + searchId;
-        return new ImageAction<>(url, AGHPBook.class, (request) -> {
-            request.header("Accept", "image/" + type.name().toLowerCase());
-            return request;
-        }, response -> {
-            final String contentType = response.httpResponse().headers().firstValue("Content-Type").orElse(null);
-            if(contentType == null || !contentType.startsWith("image/")) {
-                final JsonElement json = response.getAsJsonElement();
-                throw new IllegalStateException("Response is not an image! " + (json != null ? ("( " + json + " )") : ""));
-            }
-            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            try {
-                baos.write(response.httpResponse().body());
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-            final String imageCategory = response.httpResponse().headers().firstValue("Book-Category").orElse(null);
-            final String bookName = response.httpResponse().headers().firstValue("Book-Name").orElse(null);
-            final String commitAuthor = response.httpResponse().headers().firstValue("Book-Commit-Author").orElse(null);
-            final String commitHash = response.httpResponse().headers().firstValue("Book-Commit-Hash").orElse(null);
-            final String commitUrl = response.httpResponse().headers().firstValue("Book-Commit-Url").orElse(null);
-            // final Date dateAdded = new Date(response.httpResponse().headers().firstValue("Book-Date-Added").orElse(null));
-            return new AGHPBook(baos.toByteArray(), type, imageCategory, commitAuthor, commitHash, commitUrl, bookName, searchId);
-        });
+    public BookAction retrieveBook(final int searchId, final AGHPBook.BookImageType type) {
+        return new BookAction(this, searchId, type);
+    }
+
+    /**
+     * Retrieves many books from the AGHPB API. <br>
+     * The books will contain the image data in PNG. <br>
+     * A limited amount of books is retrieved at the same time, see {@link BatchAction#setConcurrency(int)}.
+     * @param searchIds The search_ids of the books to retrieve.
+     * @return A BatchAction for the books.
+     */
+    public BatchAction retrieveBooks(final Collection<Integer> searchIds) {
+        return retrieveBooks(searchIds, AGHPBook.BookImageType.PNG);
+    }
+
+    /**
+     * Retrieves many books from the AGHPB API. <br>
+     * A limited amount of books is retrieved at the same time, see {@link BatchAction#setConcurrency(int)}.
+     * @param searchIds The search_ids of the books to retrieve.
+     * @param type The format of the books.
+     * @return A BatchAction for the books.
+     */
+    public BatchAction retrieveBooks(final Collection<Integer> searchIds, final AGHPBook.BookImageType type) {
+        return new BatchAction(this, searchIds, type);
+    }
+
+    /**
+     * Retrieves the image data of many books, e.g. the books of #retrieveSearch(String). <br>
+     * A limited amount of books is retrieved at the same time, see {@link BatchAction#setConcurrency(int)}.
+     * Cached books of another commit than the given books are not returned.
+     * @param books The books to retrieve.
+     * @param type The format of the books.
+     * @return A BatchAction for the books.
+     */
+    public BatchAction retrieveBooks(final List<AGHPBook> books, final AGHPBook.BookImageType type) {
+        return new BatchAction(this, books, type);
     }
 
     /**
@@ -278,16 +545,307 @@ public class AGHPB {
      * @see <a href="https://api.devgoldy.xyz/aghpb/v1/docs#/other/Info_about_the_current_instance__info_get">API Documentation</a>
      */
     public RestAction<ApiInfo> retrieveInfo() {
-        return new RestAction<>(url + "/info", "GET", ApiInfo.class, response -> {
+        return new RestAction<>(this, url + "/info", "GET", ApiInfo.class, response -> {
             final JsonObject json = response.getAsJsonObject();
             if(!json.has("book_count") || !json.has("api_version")) {
                 throw new IllegalStateException("Response does not contain bookCount or apiVersion field");
             }
             return new ApiInfo(json.get("book_count").getAsInt(), json.get("api_version").getAsString());
-        });
+        }).useCache(true).useCompression(true);
+    }
+
+    /**
+     * Creates an executor, which starts a new virtual thread for each task. <br>
+     * Virtual threads were added in Java 21. As this library targets Java 17, the executor is looked up at runtime.
+     * @return The executor.
+     * @throws UnsupportedOperationException If the running JVM does not support virtual threads.
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by this JVM. Java 21 or newer is required.", e);
+        } catch (InvocationTargetException e) {
+            throw new UnsupportedOperationException("Virtual threads are not available: " + e.getCause().getMessage(), e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create virtual thread executor", e);
+        }
+    }
+
+    /**
+     * Encodes a value for the query of an url.
+     * @param value The value.
+     * @return The encoded value.
+     */
+    public static String encode(final String value) {
+        return URLEncoder.encode(value == null ? "" : value, StandardCharsets.UTF_8);
     }
 
     public record ApiStatus(String version) { }
     public record ApiInfo(int bookCount, String apiVersion) { }
 
+    /**
+     * The threads on which requests, retries and callbacks are executed.
+     */
+    public enum ExecutionMode {
+        /**
+         * A cached pool of platform threads. This is the default.
+         */
+        PLATFORM_THREADS,
+        /**
+         * A new virtual thread for every task. <br>
+         * Blocking calls like {@link RestAction#execute()} made from virtual threads will only park the virtual thread and not its carrier.
+         * Requires Java 21 or newer.
+         */
+        VIRTUAL_THREADS
+    }
+
+    /**
+     * Builder for {@link AGHPB} instances. <br>
+     * All values are optional. If nothing is set, the default url and a connect timeout of 10 seconds are used.
+     */
+    public static class Builder {
+
+        private String url = DEFAULT_URL;
+        private Duration connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+        private Executor executor;
+        private HttpClient.Version version = HttpClient.Version.HTTP_2;
+        private ProxySelector proxy;
+        private ExecutionMode executionMode = ExecutionMode.PLATFORM_THREADS;
+        private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+        private CircuitBreaker circuitBreaker;
+        private ImageCache imageCache;
+        private DiskImageCache diskImageCache;
+        private boolean requestCoalescing = false;
+        private ResponseCache responseCache;
+        private final List<RequestListener> requestListeners = new ArrayList<>();
+        private EndpointPool endpointPool;
+        private HedgingPolicy hedgingPolicy;
+        private Duration requestTimeout;
+        private boolean shared = false;
+
+        private Builder() { }
+
+        /**
+         * Sets the url of the AGHPB API.
+         * @param url The url of the AGHPB API.
+         * @return This Builder.
+         */
+        public Builder setUrl(final String url) {
+            if(url == null) throw new IllegalArgumentException("Url cannot be null.");
+            this.url = url;
+            return this;
+        }
+
+        /**
+         * Sets the connect timeout of the HttpClient.
+         * @param connectTimeout The connect timeout. Can be null to wait indefinitely.
+         * @return This Builder.
+         */
+        public Builder setConnectTimeout(final Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the executor used by the HttpClient for asynchronous tasks. <br>
+         * If none is set, a cached thread pool is created, which will be shut down together with the AGHPB instance.
+         * @param executor The executor. Can be null.
+         * @return This Builder.
+         */
+        public Builder setExecutor(final Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Sets the preferred HTTP version. Defaults to {@link HttpClient.Version#HTTP_2}.
+         * @param version The HTTP version.
+         * @return This Builder.
+         */
+        public Builder setVersion(final HttpClient.Version version) {
+            if(version == null) throw new IllegalArgumentException("Version cannot be null.");
+            this.version = version;
+            return this;
+        }
+
+        /**
+         * Sets the proxy selector of the HttpClient.
+         * @param proxy The proxy selector. Can be null to use no proxy.
+         * @return This Builder.
+         */
+        public Builder setProxy(final ProxySelector proxy) {
+            this.proxy = proxy;
+            return this;
+        }
+
+        /**
+         * Sets the execution mode, which decides on which threads the HttpClient executes requests and the callbacks of {@link RestAction#queue()} and {@link RestAction#submit()}. <br>
+         * Only used, if no executor was set with {@link #setExecutor(Executor)}.
+         * @param executionMode The execution mode.
+         * @return This Builder.
+         * @see ExecutionMode
+         */
+        public Builder setExecutionMode(final ExecutionMode executionMode) {
+            if(executionMode == null) throw new IllegalArgumentException("ExecutionMode cannot be null.");
+            this.executionMode = executionMode;
+            return this;
+        }
+
+        /**
+         * Sets the RetryPolicy, which is used by all actions, that don't have their own. <br>
+         * Defaults to {@link RetryPolicy#DEFAULT}.
+         * @param retryPolicy The RetryPolicy. Use {@link RetryPolicy#NONE} to disable retries.
+         * @return This Builder.
+         */
+        public Builder setRetryPolicy(final RetryPolicy retryPolicy) {
+            if(retryPolicy == null) throw new IllegalArgumentException("RetryPolicy cannot be null. Use RetryPolicy.NONE to disable retries.");
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the CircuitBreaker, which makes requests fail fast after repeated errors. <br>
+         * By default, no CircuitBreaker is used.
+         * @param circuitBreaker The CircuitBreaker. Can be null to disable it.
+         * @return This Builder.
+         */
+        public Builder setCircuitBreaker(final CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        /**
+         * Sets the in-memory cache for books retrieved with {@link AGHPB#retrieveBook(int, AGHPBook.BookImageType)}. <br>
+         * As book images don't change, cached books are returned without sending a request. By default, no cache is used.
+         * @param imageCache The ImageCache. Can be null to disable caching.
+         * @return This Builder.
+         * @see ImageCache#ImageCache(long)
+         */
+        public Builder setImageCache(final ImageCache imageCache) {
+            this.imageCache = imageCache;
+            return this;
+        }
+
+        /**
+         * Sets the persistent cache for retrieved books. <br>
+         * It is checked after the in-memory {@link ImageCache}, before a request is sent. As it survives restarts, a restarted application doesn't have to download its books again.
+         * By default, no disk cache is used.
+         * @param diskImageCache The DiskImageCache. Can be null to disable disk caching.
+         * @return This Builder.
+         * @see DiskImageCache#DiskImageCache(java.nio.file.Path, long)
+         */
+        public Builder setDiskImageCache(final DiskImageCache diskImageCache) {
+            this.diskImageCache = diskImageCache;
+            return this;
+        }
+
+        /**
+         * Enables or disables request coalescing. <br>
+         * If enabled, identical requests (same url, method and Accept header), which are in flight at the same time, share one exchange and all receive its result.
+         * This applies to books, categories, the info and the status, but never to random books. <br>
+         * <b>NOTE:</b> Books retrieved by coalesced requests share the same image bytes. Disabled by default.
+         * @param requestCoalescing true, to enable request coalescing.
+         * @return This Builder.
+         */
+        public Builder setRequestCoalescing(final boolean requestCoalescing) {
+            this.requestCoalescing = requestCoalescing;
+            return this;
+        }
+
+        /**
+         * Sets the cache for the results of {@link AGHPB#retrieveAllCategories()}, {@link AGHPB#retrieveInfo()}, {@link AGHPB#retrieveStatus()} and {@link AGHPB#retrieveSearch(String)}. <br>
+         * Fresh results are returned without a request. Stale results are revalidated with <code>If-None-Match</code> and <code>If-Modified-Since</code>,
+         * so an unchanged result is neither downloaded nor parsed again. By default, no cache is used.
+         * @param responseCache The ResponseCache. Can be null to disable response caching.
+         * @return This Builder.
+         * @see ResponseCache#ResponseCache(Duration, int)
+         */
+        public Builder setResponseCache(final ResponseCache responseCache) {
+            this.responseCache = responseCache;
+            return this;
+        }
+
+        /**
+         * Adds a listener, which receives events about every request, e.g. its start, retries, rate limit waits and completion. <br>
+         * Use a {@link de.joshicodes.aghpb4j.metrics.MetricsRecorder} to record latency percentiles and throughput per endpoint.
+         * @param requestListener The listener.
+         * @return This Builder.
+         * @see RequestListener
+         */
+        public Builder addRequestListener(final RequestListener requestListener) {
+            if(requestListener == null) throw new IllegalArgumentException("RequestListener cannot be null.");
+            this.requestListeners.add(requestListener);
+            return this;
+        }
+
+        /**
+         * Sets several equivalent instances of the AGHPB API, e.g. mirrors, between which the requests are balanced. <br>
+         * Every attempt goes to the healthy endpoint with the lowest latency and the fewest outstanding requests.
+         * On connection errors and 5xx responses, the request fails over to another endpoint. <br>
+         * The first url of the pool replaces the url set with {@link #setUrl(String)}. By default, no pool is used.
+         * @param endpointPool The EndpointPool. Can be null to send all requests to the url.
+         * @return This Builder.
+         * @see EndpointPool
+         */
+        public Builder setEndpointPool(final EndpointPool endpointPool) {
+            this.endpointPool = endpointPool;
+            return this;
+        }
+
+        /**
+         * Sets the default time, within which a request has to complete. <br>
+         * The timeout covers rate limit waits, connecting, all attempts and the delays between retries.
+         * Once it has passed, the request is aborted and fails with an {@link java.net.http.HttpTimeoutException}.
+         * Single actions can override it with {@link RestAction#useTimeout(Duration)}. By default, requests have no deadline.
+         * @param requestTimeout The timeout. Can be null for no deadline.
+         * @return This Builder.
+         */
+        public Builder setRequestTimeout(final Duration requestTimeout) {
+            if(requestTimeout != null && (requestTimeout.isNegative() || requestTimeout.isZero())) throw new IllegalArgumentException("Request timeout must be positive.");
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
+        /**
+         * Enables hedging for {@link AGHPB#retrieveBook(int)} and {@link AGHPB#retrieveRandomBook()}. <br>
+         * If the headers of a request don't arrive within a percentile of the usual time, the request is sent a second time,
+         * with an {@link EndpointPool} usually to another endpoint. The first response wins and the other request is cancelled.
+         * A budget limits how many requests are hedged. By default, requests are not hedged.
+         * @param hedgingPolicy The HedgingPolicy. Can be null to disable hedging.
+         * @return This Builder.
+         * @see HedgingPolicy#builder()
+         */
+        public Builder setHedgingPolicy(final HedgingPolicy hedgingPolicy) {
+            this.hedgingPolicy = hedgingPolicy;
+            return this;
+        }
+
+        /**
+         * Builds the AGHPB instance.
+         * @return The new AGHPB instance.
+         * @throws UnsupportedOperationException If {@link ExecutionMode#VIRTUAL_THREADS} is used, but the JVM does not support virtual threads.
+         */
+        public AGHPB build() {
+            return new AGHPB(this);
+        }
+
+    }
+
+    /**
+     * Creates the default instance lazily, on the first call to {@link #getDefault()}.
+     */
+    private static class DefaultHolder {
+
+        private static final AGHPB INSTANCE = create();
+
+        private static AGHPB create() {
+            final Builder builder = new Builder();
+            builder.shared = true;
+            return builder.build();
+        }
+
+    }
+
 }
@@ -0,0 +1,186 @@
+package de.joshicodes.aghpb4j.action;
+
+import de.joshicodes.aghpb4j.AGHPB;
+import de.joshicodes.aghpb4j.objects.AGHPBook;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Retrieves many books with a limited amount of requests in flight. <br>
+ * All requests share the connections, the rate limit and the caches of the AGHPB instance.
+ * A failed book does not abort the batch, instead its {@link BookResult} contains the error. <br>
+ * The result list is in the order of the search ids. Use {@link #onResult(Consumer)} to handle the books in the order they arrive. <br>
+ * The timeout of this action applies to every book on its own. Cancelling the returned future aborts the books in flight,
+ * as does an exception thrown by the result consumer.
+ */
+public class BatchAction extends RestAction<List<BatchAction.BookResult>> {
+
+    public static final int DEFAULT_CONCURRENCY = 8;
+
+    /**
+     * The outcome of a single book of the batch.
+     * @param searchId The search id of the book.
+     * @param book The book, or null if it failed.
+     * @param error The error, or null if it succeeded.
+     */
+    public record BookResult(int searchId, AGHPBook book, Throwable error) {
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+    }
+
+    private final int[] searchIds;
+    /**
+     * The books to retrieve, if the batch was created from books, so the commit hash of cached books is checked. Otherwise null.
+     */
+    private final AGHPBook[] books;
+    private final AGHPBook.BookImageType type;
+    private int concurrency = DEFAULT_CONCURRENCY;
+    private Consumer<BookResult> resultConsumer;
+
+    public BatchAction(final AGHPB api, final Collection<Integer> searchIds, final AGHPBook.BookImageType type) {
+        super(api, null, "GET", null, null, null);
+        if(searchIds == null) throw new IllegalArgumentException("searchIds cannot be null.");
+        this.searchIds = searchIds.stream().mapToInt(Integer::intValue).toArray();
+        this.books = null;
+        this.type = type;
+    }
+
+    /**
+     * Creates a BatchAction for books, which were e.g. retrieved by a search. <br>
+     * Like {@link AGHPB#retrieveBook(AGHPBook, AGHPBook.BookImageType)}, cached books of another commit are not returned.
+     * @param api The AGHPB instance.
+     * @param books The books to retrieve.
+     * @param type The format of the books.
+     */
+    public BatchAction(final AGHPB api, final List<AGHPBook> books, final AGHPBook.BookImageType type) {
+        super(api, null, "GET", null, null, null);
+        if(books == null) throw new IllegalArgumentException("books cannot be null.");
+        this.books = books.toArray(new AGHPBook[0]);
+        for(AGHPBook book : this.books) {
+            if(book == null) throw new IllegalArgumentException("books cannot contain null.");
+        }
+        this.searchIds = books.stream().mapToInt(AGHPBook::searchId).toArray();
+        this.type = type;
+    }
+
+    /**
+     * Sets the maximum amount of books, which are retrieved at the same time. Defaults to {@value #DEFAULT_CONCURRENCY}.
+     * @param concurrency The maximum amount of requests in flight.
+     * @return This BatchAction.
+     */
+    public BatchAction setConcurrency(final int concurrency) {
+        if(concurrency < 1) throw new IllegalArgumentException("Concurrency must be at least 1.");
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * Sets a consumer, which is called for every book as soon as it was retrieved or failed, in the order of completion. <br>
+     * If the consumer throws an exception, the batch fails with it and the books in flight are cancelled.
+     * @param resultConsumer The consumer. Can be null.
+     * @return This BatchAction.
+     */
+    public BatchAction onResult(final Consumer<BookResult> resultConsumer) {
+        this.resultConsumer = resultConsumer;
+        return this;
+    }
+
+    @Override
+    public CompletableFuture<List<BookResult>> submit() {
+        return new Batch().start();
+    }
+
+    /**
+     * A single execution of this action.
+     */
+    private class Batch {
+
+        private final BookResult[] results = new BookResult[searchIds.length];
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger completed = new AtomicInteger();
+        private final CompletableFuture<List<BookResult>> result = new CompletableFuture<>();
+        private final Set<CompletableFuture<AGHPBook>> running = ConcurrentHashMap.newKeySet();
+
+        private CompletableFuture<List<BookResult>> start() {
+            if(searchIds.length == 0) {
+                result.complete(List.of());
+                return result;
+            }
+            // Cancelling or failing the batch aborts the books in flight
+            result.whenComplete((results, error) -> {
+                if(error != null) running.forEach(future -> future.cancel(true));
+            });
+            for(int i = 0; i < Math.min(concurrency, searchIds.length); i++) {
+                launch();
+            }
+            return result;
+        }
+
+        /**
+         * Starts the next request. Requests, which complete immediately (e.g. from the cache), are handled in a loop instead of recursively.
+         */
+        private void launch() {
+            while(!result.isDone()) {
+                final int index = next.getAndIncrement();
+                if(index >= searchIds.length) return;
+                CompletableFuture<AGHPBook> future;
+                try {
+                    final BookAction action = books != null ? api.retrieveBook(books[index], type) : api.retrieveBook(searchIds[index], type);
+                    future = action.useRetryPolicy(retryPolicy).useTimeout(timeout).submit();
+                } catch (RuntimeException e) {
+                    future = CompletableFuture.failedFuture(e);
+                }
+                if(!future.isDone()) {
+                    final CompletableFuture<AGHPBook> pending = future;
+                    running.add(pending);
+                    if(result.isCompletedExceptionally()) pending.cancel(true);
+                    pending.whenComplete((book, error) -> {
+                        running.remove(pending);
+                        complete(index, book, error);
+                        launch();
+                    });
+                    return;
+                }
+                AGHPBook book = null;
+                Throwable error = null;
+                try {
+                    book = future.join();
+                } catch (RuntimeException e) {
+                    error = e;
+                }
+                complete(index, book, error);
+            }
+        }
+
+        private void complete(final int index, final AGHPBook book, final Throwable error) {
+            // The batch already failed or was cancelled, the remaining books are only aborted
+            if(result.isDone()) return;
+            final BookResult bookResult = new BookResult(searchIds[index], book, error != null ? unwrap(error) : null);
+            results[index] = bookResult;
+            if(resultConsumer != null) {
+                try {
+                    resultConsumer.accept(bookResult);
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+            }
+            if(completed.incrementAndGet() == searchIds.length) {
+                result.complete(new ArrayList<>(Arrays.asList(results)));
+            }
+        }
+
+    }
+
+}
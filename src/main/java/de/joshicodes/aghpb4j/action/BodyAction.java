@@ -0,0 +1,34 @@
+package de.joshicodes.aghpb4j.action;
+
+import de.joshicodes.aghpb4j.AGHPB;
+
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * A RestAction with a custom {@link HttpResponse.BodyHandler}. <br>
+ * Used for responses, which should not be read into memory as a whole, e.g. to stream them into a file.
+ * @param <B> The type of the response body.
+ * @param <T> The type of the result.
+ */
+public class BodyAction<B, T> extends RestAction<T> {
+
+    private final HttpResponse.BodyHandler<B> bodyHandler;
+    private final Class<B> bodyClass;
+    private final Function<RestResponse<B>, T> handler;
+
+    public BodyAction(final AGHPB api, final String url, final Function<HttpRequest.Builder, HttpRequest.Builder> clientModifier, final HttpResponse.BodyHandler<B> bodyHandler, final Class<B> bodyClass, final Function<RestResponse<B>, T> handler) {
+        super(api, url, "GET", null, clientModifier, null);
+        this.bodyHandler = bodyHandler;
+        this.bodyClass = bodyClass;
+        this.handler = handler;
+    }
+
+    @Override
+    public CompletableFuture<T> submit() {
+        return submit(bodyHandler, bodyClass, handler);
+    }
+
+}
@@ -0,0 +1,77 @@
+package de.joshicodes.aghpb4j.action;
+
+import de.joshicodes.aghpb4j.AGHPB;
+import de.joshicodes.aghpb4j.cache.DiskImageCache;
+import de.joshicodes.aghpb4j.cache.ImageCache;
+import de.joshicodes.aghpb4j.objects.AGHPBook;
+
+import java.util.concurrent.CompletableFuture;
+
+public class BookAction extends BookImageAction {
+
+    public static final String URL = "%s/get/id/%d";
+
+    private final int searchId;
+    private final String commitHash;
+
+    public BookAction(final AGHPB api, final int searchId, final AGHPBook.BookImageType type) {
+        this(api, searchId, type, null);
+    }
+
+    /**
+     * Creates a new BookAction for a book, whose current commit is known, e.g. from a search. <br>
+     * Cached books of another commit are outdated and not returned.
+     * @param api The AGHPB instance.
+     * @param searchId The search id of the book.
+     * @param type The image type of the book.
+     * @param commitHash The commit hash of the book. Can be null to accept any cached commit.
+     */
+    public BookAction(final AGHPB api, final int searchId, final AGHPBook.BookImageType type, final String commitHash) {
+        super(api, String.format(URL, api.getUrl(), searchId), type);
+        this.searchId = searchId;
+        this.commitHash = commitHash;
+    }
+
+    /**
+     * Executes the request asynchronously. <br>
+     * If the AGHPB instance has an {@link ImageCache} or a {@link DiskImageCache} and the book is cached, the cached book is returned without sending a request.
+     * If the commit hash of the book is known, only a cached book of this commit is returned.
+     * Otherwise, the retrieved book will be added to the caches.
+     * @return A CompletableFuture for the book.
+     */
+    @Override
+    public CompletableFuture<AGHPBook> submit() {
+        final ImageCache cache = api.getImageCache();
+        if(cache != null) {
+            final AGHPBook cached = cache.get(searchId, type, commitHash);
+            if(cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+        final DiskImageCache diskCache = api.getDiskImageCache();
+        if(diskCache == null) {
+            return download();
+        }
+        // Reading from disk is blocking, so it is done on the executor
+        return composeCancellable(CompletableFuture.supplyAsync(() -> diskCache.get(searchId, type, commitHash), api.getExecutor()), book -> {
+            if(book == null) {
+                return download();
+            }
+            if(cache != null) cache.put(book);
+            return CompletableFuture.completedFuture(book);
+        });
+    }
+
+    private CompletableFuture<AGHPBook> download() {
+        return mapCancellable(super.submit(), book -> {
+            storeInCaches(api, book);
+            return book;
+        });
+    }
+
+    @Override
+    public int getSearchId() {
+        return searchId;
+    }
+
+}
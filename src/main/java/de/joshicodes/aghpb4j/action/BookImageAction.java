@@ -0,0 +1,268 @@
+package de.joshicodes.aghpb4j.action;
+
+import de.joshicodes.aghpb4j.AGHPB;
+import de.joshicodes.aghpb4j.objects.AGHPBook;
+import de.joshicodes.aghpb4j.objects.BookStream;
+import de.joshicodes.aghpb4j.request.RetryPolicy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Base class for actions, which retrieve the image of a book. <br>
+ * Besides loading the image into memory with {@link #execute()}, the image can be streamed into a file, a channel or an InputStream,
+ * so that large images never have to be held on the heap.
+ */
+public abstract class BookImageAction extends ImageAction<AGHPBook> {
+
+    protected AGHPBook.BookImageType type;
+
+    protected BookImageAction(final AGHPB api, final String url, final AGHPBook.BookImageType type) {
+        super(api, url, AGHPBook.class, null, null);
+        this.type = type;
+        clientModifier = (request) -> {
+            request.header("Accept", "image/" + this.type.name().toLowerCase());
+            return request;
+        };
+        responseHandler = response -> {
+            final HttpResponse<byte[]> httpResponse = response.httpResponse();
+            if(!isImage(httpResponse.headers())) {
+                throw notAnImage(httpResponse, httpResponse.body() != null ? new String(httpResponse.body(), StandardCharsets.UTF_8) : null);
+            }
+            return readBook(httpResponse, httpResponse.body());
+        };
+    }
+
+    /**
+     * Returns the search id of the requested book.
+     * @return The search id, or -1 if it is not known before the response arrives.
+     */
+    public abstract int getSearchId();
+
+    public AGHPBook.BookImageType getType() {
+        return type;
+    }
+
+    /**
+     * Images are read into memory and retrieving them has no side effects, so slow requests may be hedged. <br>
+     * The streaming variants are never hedged, as two responses would be written to the same target.
+     * @return true
+     */
+    @Override
+    protected boolean isHedgeable() {
+        return true;
+    }
+
+    /**
+     * Streams the image directly into a file, without loading it into memory. <br>
+     * Every download writes to its own temporary file next to the target, which is moved to the target once the download is complete.
+     * If the download fails or is cancelled, the temporary file is deleted. Missing parent directories are created when the action is executed.
+     * @param file The file to write the image to.
+     * @return A RestAction for the book. The book will not contain any image data.
+     */
+    public RestAction<AGHPBook> streamTo(final Path file) {
+        if(file == null) throw new IllegalArgumentException("File cannot be null. Please provide a valid file.");
+        final Path parent = file.toAbsolutePath().getParent();
+        if(parent == null || file.getFileName() == null) throw new IllegalArgumentException("File has to be inside a directory.");
+        return new RestAction<AGHPBook>(api, url, "GET", AGHPBook.class, clientModifier, null) {
+            @Override
+            public CompletableFuture<AGHPBook> submit() {
+                final Path temp;
+                try {
+                    Files.createDirectories(parent);
+                    // Concurrent downloads to the same file don't share a temporary file
+                    temp = Files.createTempFile(parent, file.getFileName().toString(), ".part");
+                } catch (IOException e) {
+                    return CompletableFuture.failedFuture(new UncheckedIOException(e));
+                }
+                final HttpResponse.BodyHandler<Path> bodyHandler = info -> isImage(info.headers())
+                        ? HttpResponse.BodySubscribers.ofFile(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+                        : HttpResponse.BodySubscribers.replacing(null);
+                final CompletableFuture<AGHPBook> download;
+                try {
+                    download = submit(bodyHandler, Path.class, response -> {
+                        if(response.httpResponse().body() == null) {
+                            throw notAnImage(response.httpResponse(), null);
+                        }
+                        try {
+                            try {
+                                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                            } catch (AtomicMoveNotSupportedException e) {
+                                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+                            }
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        return readBook(response.httpResponse(), null);
+                    });
+                } catch (RuntimeException e) {
+                    delete(temp);
+                    throw e;
+                }
+                // Completes after the temporary file was deleted, cancelling it aborts the download
+                final CompletableFuture<AGHPBook> result = new CompletableFuture<>();
+                download.whenComplete((book, error) -> {
+                    if(error == null) {
+                        result.complete(book);
+                        return;
+                    }
+                    delete(temp);
+                    result.completeExceptionally(error);
+                });
+                result.whenComplete((book, error) -> {
+                    if(result.isCancelled()) download.cancel(true);
+                });
+                return result;
+            }
+        }.useRetryPolicy(retryPolicy).useTimeout(timeout);
+    }
+
+    private static void delete(final Path temp) {
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException ignored) {
+            // The temporary file is left behind, the target is not affected
+        }
+    }
+
+    /**
+     * Streams the image directly into a channel, e.g. a socket, without loading it into memory. <br>
+     * The channel has to be in blocking mode and will not be closed. <br>
+     * As a failed download may already have written parts of the image to the channel, the request is not retried by default.
+     * @param channel The channel to write the image to.
+     * @return A RestAction for the book. The book will not contain any image data.
+     */
+    public RestAction<AGHPBook> streamTo(final WritableByteChannel channel) {
+        if(channel == null) throw new IllegalArgumentException("Channel cannot be null.");
+        final HttpResponse.BodyHandler<Long> bodyHandler = info -> isImage(info.headers())
+                ? new ChannelSubscriber(channel)
+                : HttpResponse.BodySubscribers.replacing(null);
+        return new BodyAction<>(api, url, clientModifier, bodyHandler, Long.class, response -> {
+            if(response.httpResponse().body() == null) {
+                throw notAnImage(response.httpResponse(), null);
+            }
+            return readBook(response.httpResponse(), null);
+        }).useRetryPolicy(retryPolicy != null ? retryPolicy : RetryPolicy.NONE).useTimeout(timeout);
+    }
+
+    /**
+     * Opens the image as an InputStream, which reads directly from the response. <br>
+     * The returned {@link BookStream} contains the metadata of the book and must be closed after use.
+     * @return A RestAction for the BookStream.
+     */
+    public RestAction<BookStream> stream() {
+        return new BodyAction<>(api, url, clientModifier, HttpResponse.BodyHandlers.ofInputStream(), InputStream.class, response -> {
+            final HttpResponse<InputStream> httpResponse = response.httpResponse();
+            if(!isImage(httpResponse.headers())) {
+                String body;
+                try (InputStream inputStream = httpResponse.body()) {
+                    body = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    body = null;
+                }
+                throw notAnImage(httpResponse, body);
+            }
+            return new BookStream(readBook(httpResponse, null), httpResponse.body());
+        }).useRetryPolicy(retryPolicy).useTimeout(timeout);
+    }
+
+    /**
+     * Creates a book from the Book-* headers of the response.
+     * @param response The response.
+     * @param imageBytes The image data. Can be null.
+     * @return The book.
+     */
+    protected AGHPBook readBook(final HttpResponse<?> response, final byte[] imageBytes) {
+        final HttpHeaders headers = response.headers();
+        final String imageCategory = headers.firstValue("Book-Category").orElse(null);
+        final String bookName = headers.firstValue("Book-Name").orElse(null);
+        final String commitAuthor = headers.firstValue("Book-Commit-Author").orElse(null);
+        final String commitHash = headers.firstValue("Book-Commit-Hash").orElse(null);
+        final String commitUrl = headers.firstValue("Book-Commit-Url").orElse(null);
+        int searchId = getSearchId();
+        try {
+            searchId = Integer.parseInt(headers.firstValue("Book-Search-Id").orElse(String.valueOf(searchId)));
+        } catch (NumberFormatException ignored) { }
+        // final Date dateAdded = new Date(headers.firstValue("Book-Date-Added").orElse(null));
+        return new AGHPBook(imageBytes, type, imageCategory, commitAuthor, commitHash, commitUrl, bookName, searchId);
+    }
+
+    protected static boolean isImage(final HttpHeaders headers) {
+        final String contentType = headers.firstValue("Content-Type").orElse(null);
+        return contentType != null && contentType.startsWith("image/");
+    }
+
+    protected IllegalStateException notAnImage(final HttpResponse<?> response, final String body) {
+        final String contentType = response.headers().firstValue("Content-Type").orElse(null);
+        return new IllegalStateException("Failed request to " + response.uri() + "! Response is not an image! " + (body != null && !body.isEmpty() ? "( " + body + " )." : "") + " Status Code is " + response.statusCode() + ", Content Type is " + contentType + ". Expected image/*.");
+    }
+
+    /**
+     * Writes every received chunk of the body into a channel.
+     */
+    private static class ChannelSubscriber implements HttpResponse.BodySubscriber<Long> {
+
+        private final WritableByteChannel channel;
+        private final CompletableFuture<Long> result = new CompletableFuture<>();
+        private Flow.Subscription subscription;
+        private long written = 0;
+
+        private ChannelSubscriber(final WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public CompletionStage<Long> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(final List<ByteBuffer> items) {
+            try {
+                for(ByteBuffer buffer : items) {
+                    while(buffer.hasRemaining()) {
+                        written += channel.write(buffer);
+                    }
+                }
+            } catch (IOException e) {
+                subscription.cancel();
+                result.completeExceptionally(e);
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete(written);
+        }
+
+    }
+
+}
@@ -0,0 +1,388 @@
+package de.joshicodes.aghpb4j.action;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses a gzip or deflate encoded body, while it is received, and passes the decompressed chunks on to another BodySubscriber. <br>
+ * The decompressed body is passed on in chunks of 16 KiB, one chunk per item requested by the downstream subscriber.
+ * More of the compressed body is only requested, once the received part has been inflated,
+ * so at most one received item and two chunks are held in memory, regardless of the compression ratio. <br>
+ * gzip bodies are checked against their CRC32 and size, and may consist of several members, optionally followed by zero padding.
+ * @param <T> The type of the body.
+ */
+class DecompressingBodySubscriber<T> implements HttpResponse.BodySubscriber<T> {
+
+    static final int CHUNK_SIZE = 16 * 1024;
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int GZIP_TRAILER = 8;
+    private static final int FHCRC = 2, FEXTRA = 4, FNAME = 8, FCOMMENT = 16;
+
+    private enum State { HEADER, BODY, TRAILER, DONE }
+
+    /**
+     * Wraps the BodyHandler, so that gzip and deflate encoded responses are decompressed. Other responses are passed through.
+     * @param handler The BodyHandler for the decompressed body.
+     * @return The decompressing BodyHandler.
+     * @param <T> The type of the body.
+     */
+    static <T> HttpResponse.BodyHandler<T> handler(final HttpResponse.BodyHandler<T> handler) {
+        return responseInfo -> {
+            final String encoding = responseInfo.headers().firstValue("Content-Encoding").orElse("").trim().toLowerCase(Locale.ROOT);
+            return switch (encoding) {
+                case "gzip", "x-gzip" -> new DecompressingBodySubscriber<>(handler.apply(responseInfo), true);
+                case "deflate" -> new DecompressingBodySubscriber<>(handler.apply(responseInfo), false);
+                default -> handler.apply(responseInfo);
+            };
+        };
+    }
+
+    private final HttpResponse.BodySubscriber<T> downstream;
+    private final boolean gzip;
+    private final ConcurrentLinkedQueue<List<ByteBuffer>> received = new ConcurrentLinkedQueue<>();
+    private final AtomicLong demand = new AtomicLong();
+    /**
+     * Makes sure, that only one thread decodes at a time. Signals, which arrive while another thread decodes, are picked up by that thread.
+     */
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile Flow.Subscription subscription;
+    private volatile boolean completed = false;
+    private volatile boolean cancelled = false;
+    private volatile Throwable error;
+
+    // Only accessed while holding wip
+    private final ArrayDeque<ByteBuffer> input = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+    private Inflater inflater;
+    private State state = State.HEADER;
+    /**
+     * Bytes of a header or trailer, which arrived split over several chunks.
+     */
+    private byte[] pending = new byte[0];
+    private ByteBuffer carry;
+    /**
+     * The chunk, which is currently filled, and the full chunk, which waits for demand.
+     */
+    private byte[] chunk;
+    private int chunkLength = 0;
+    private ByteBuffer ready;
+    private long receivedBytes = 0;
+    private int members = 0;
+    private boolean requested = false;
+    private boolean terminated = false;
+
+    DecompressingBodySubscriber(final HttpResponse.BodySubscriber<T> downstream, final boolean gzip) {
+        this.downstream = downstream;
+        this.gzip = gzip;
+    }
+
+    @Override
+    public CompletionStage<T> getBody() {
+        return downstream.getBody();
+    }
+
+    @Override
+    public void onSubscribe(final Flow.Subscription subscription) {
+        this.subscription = subscription;
+        downstream.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(final long n) {
+                if(n <= 0) {
+                    error = new IllegalArgumentException("The demand must be positive, but was " + n + ".");
+                    subscription.cancel();
+                } else {
+                    demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                subscription.cancel();
+                drain();
+            }
+        });
+    }
+
+    @Override
+    public void onNext(final List<ByteBuffer> items) {
+        received.add(items);
+        drain();
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+        error = throwable;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        completed = true;
+        drain();
+    }
+
+    private void drain() {
+        if(wip.getAndIncrement() != 0) return;
+        do {
+            if(terminated) continue;
+            if(cancelled) {
+                terminated = true;
+                release();
+                continue;
+            }
+            try {
+                emit();
+            } catch (IOException | DataFormatException e) {
+                // Signal the error first, cancelling makes the HttpClient fail the body with a less helpful "closed" error
+                fail(e instanceof IOException ioException ? ioException : new IOException("Invalid " + (gzip ? "gzip" : "deflate") + " body: " + e.getMessage(), e));
+                subscription.cancel();
+            }
+        } while(wip.decrementAndGet() != 0);
+    }
+
+    /**
+     * Passes decompressed chunks on, as long as there is demand, and requests more of the body, once the received part is inflated.
+     */
+    private void emit() throws IOException, DataFormatException {
+        while(true) {
+            final Throwable failure = error;
+            if(failure != null) {
+                fail(failure);
+                return;
+            }
+            if(ready == null) {
+                ready = decodeNext();
+                if(ready == null) {
+                    final List<ByteBuffer> items = received.poll();
+                    if(items != null) {
+                        requested = false;
+                        for(ByteBuffer item : items) {
+                            receivedBytes += item.remaining();
+                            input.add(item);
+                        }
+                        continue;
+                    }
+                    if(!completed) {
+                        if(!requested && demand.get() > 0) {
+                            requested = true;
+                            subscription.request(1);
+                        }
+                        return;
+                    }
+                    if(chunkLength == 0) {
+                        finish();
+                        return;
+                    }
+                    // The last chunk is not full
+                    ready = ByteBuffer.wrap(chunk, 0, chunkLength);
+                    chunk = null;
+                    chunkLength = 0;
+                }
+            }
+            if(demand.get() == 0) return;
+            final ByteBuffer next = ready;
+            ready = null;
+            demand.decrementAndGet();
+            downstream.onNext(List.of(next));
+            if(cancelled) return;
+        }
+    }
+
+    /**
+     * Decodes the received input, until a chunk is full.
+     * @return The full chunk, or null if more input is needed.
+     */
+    private ByteBuffer decodeNext() throws IOException, DataFormatException {
+        while(true) {
+            if(state == State.BODY) {
+                if(inflater.needsInput()) {
+                    if(carry != null) {
+                        inflater.setInput(carry);
+                        carry = null;
+                    } else {
+                        final ByteBuffer next = nextInput();
+                        if(next == null) return null;
+                        inflater.setInput(next);
+                    }
+                }
+                if(chunk == null) chunk = new byte[CHUNK_SIZE];
+                final int length = inflater.inflate(chunk, chunkLength, CHUNK_SIZE - chunkLength);
+                if(gzip) crc.update(chunk, chunkLength, length);
+                chunkLength += length;
+                if(chunkLength == CHUNK_SIZE) {
+                    final ByteBuffer full = ByteBuffer.wrap(chunk);
+                    chunk = null;
+                    chunkLength = 0;
+                    return full;
+                }
+                if(inflater.finished()) {
+                    // The inflater advanced the input to the end of the compressed data, the rest is read below
+                    state = gzip ? State.TRAILER : State.DONE;
+                } else if(length == 0 && inflater.needsDictionary()) {
+                    throw new DataFormatException("A preset dictionary is not supported.");
+                }
+                continue;
+            }
+            final ByteBuffer next = nextInput();
+            if(next == null) return null;
+            switch (state) {
+                case HEADER -> {
+                    if(gzip && members > 0 && pending.length == 0 && next.get(next.position()) == 0) {
+                        // Zero padding after the last member
+                        state = State.DONE;
+                    } else if(readHeader(next)) {
+                        state = State.BODY;
+                    }
+                }
+                case TRAILER -> {
+                    if(readTrailer(next)) {
+                        // Another gzip member may follow
+                        members++;
+                        state = State.HEADER;
+                    }
+                }
+                case DONE -> {
+                    // Padding or trailing garbage after the body is ignored
+                    next.position(next.limit());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the received buffer, which is currently decoded.
+     * @return The buffer, or null if all received buffers were decoded.
+     */
+    private ByteBuffer nextInput() {
+        ByteBuffer next;
+        while((next = input.peek()) != null && !next.hasRemaining()) {
+            input.poll();
+        }
+        return next;
+    }
+
+    private void finish() throws IOException {
+        // An empty body, e.g. of a 304, is not compressed at all
+        if(receivedBytes > 0 && state != State.DONE && !(gzip && state == State.HEADER && pending.length == 0)) {
+            throw new EOFException("Unexpected end of the " + (gzip ? "gzip" : "deflate") + " body.");
+        }
+        terminated = true;
+        release();
+        downstream.onComplete();
+    }
+
+    /**
+     * Reads the gzip header, or the first bytes of a deflate body to tell zlib and raw deflate apart.
+     * @return true, if the header is complete and the inflater was created.
+     */
+    private boolean readHeader(final ByteBuffer input) throws IOException {
+        final int offset = pending.length;
+        final int available = input.remaining();
+        pending = Arrays.copyOf(pending, offset + available);
+        input.get(pending, offset, available);
+        final int headerLength = gzip ? gzipHeaderLength(pending) : (pending.length >= 2 ? 0 : -1);
+        if(headerLength < 0) return false;
+        if(inflater == null) {
+            // Many servers send raw deflate instead of the zlib format required by the specification
+            inflater = new Inflater(gzip || !isZlib(pending));
+        } else {
+            inflater.reset();
+        }
+        crc.reset();
+        if(headerLength >= offset) {
+            // Give back the bytes after the header, they belong to the body
+            input.position(input.position() - (pending.length - headerLength));
+        } else {
+            // The deflate body started in an earlier chunk
+            carry = ByteBuffer.wrap(pending, headerLength, offset - headerLength);
+            input.position(input.position() - available);
+        }
+        pending = new byte[0];
+        return true;
+    }
+
+    private boolean readTrailer(final ByteBuffer input) throws IOException {
+        final int needed = GZIP_TRAILER - pending.length;
+        final int take = Math.min(needed, input.remaining());
+        final int offset = pending.length;
+        pending = Arrays.copyOf(pending, offset + take);
+        input.get(pending, offset, take);
+        if(pending.length < GZIP_TRAILER) return false;
+        final long expectedCrc = readInt(pending, 0);
+        final long expectedSize = readInt(pending, 4);
+        pending = new byte[0];
+        if(expectedCrc != crc.getValue()) throw new IOException("Corrupt gzip body, the CRC32 does not match.");
+        if(expectedSize != (inflater.getBytesWritten() & 0xffffffffL)) throw new IOException("Corrupt gzip body, the size does not match.");
+        return true;
+    }
+
+    /**
+     * Returns the length of the gzip header at the start of the bytes.
+     * @return The length, or -1 if more bytes are needed.
+     */
+    private static int gzipHeaderLength(final byte[] bytes) throws IOException {
+        if(bytes.length < 10) return -1;
+        if(((bytes[0] & 0xff) | (bytes[1] & 0xff) << 8) != GZIP_MAGIC) throw new IOException("Not a gzip body.");
+        if(bytes[2] != 8) throw new IOException("Unsupported gzip compression method " + bytes[2] + ".");
+        final int flags = bytes[3] & 0xff;
+        int position = 10;
+        if((flags & FEXTRA) != 0) {
+            if(bytes.length < position + 2) return -1;
+            position += 2 + ((bytes[position] & 0xff) | (bytes[position + 1] & 0xff) << 8);
+        }
+        if((flags & FNAME) != 0) {
+            position = skipZeroTerminated(bytes, position);
+            if(position < 0) return -1;
+        }
+        if((flags & FCOMMENT) != 0) {
+            position = skipZeroTerminated(bytes, position);
+            if(position < 0) return -1;
+        }
+        if((flags & FHCRC) != 0) position += 2;
+        return bytes.length >= position ? position : -1;
+    }
+
+    private static int skipZeroTerminated(final byte[] bytes, int position) {
+        while(position < bytes.length) {
+            if(bytes[position++] == 0) return position;
+        }
+        return -1;
+    }
+
+    private static boolean isZlib(final byte[] bytes) {
+        final int cmf = bytes[0] & 0xff;
+        final int flg = bytes[1] & 0xff;
+        return (cmf & 0x0f) == 8 && (cmf << 8 | flg) % 31 == 0;
+    }
+
+    private static long readInt(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xffL) | (bytes[offset + 1] & 0xffL) << 8 | (bytes[offset + 2] & 0xffL) << 16 | (bytes[offset + 3] & 0xffL) << 24;
+    }
+
+    private void fail(final Throwable throwable) {
+        terminated = true;
+        release();
+        downstream.onError(throwable);
+    }
+
+    private void release() {
+        if(inflater != null) inflater.end();
+    }
+
+}
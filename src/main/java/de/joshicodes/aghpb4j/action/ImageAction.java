@@ -1,28 +1,57 @@
 package de.joshicodes.aghpb4j.action;
 
-import java.net.http.HttpClient;
+import de.joshicodes.aghpb4j.AGHPB;
+import de.joshicodes.aghpb4j.cache.DiskImageCache;
+import de.joshicodes.aghpb4j.cache.ImageCache;
+import de.joshicodes.aghpb4j.objects.AGHPBook;
+
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Function;
 
 public class ImageAction<T> extends RestAction<T> {
 
     protected Function<RestResponse<byte[]>, T> responseHandler;
 
-    public ImageAction(final String url, final Class<T> tClass, final Function<HttpRequest.Builder, HttpRequest.Builder> clientModifier, final Function<RestResponse<byte[]>, T> responseHandler) {
-        super(url, "GET", tClass, clientModifier, null);
+    public ImageAction(final AGHPB api, final String url, final Class<T> tClass, final Function<HttpRequest.Builder, HttpRequest.Builder> clientModifier, final Function<RestResponse<byte[]>, T> responseHandler) {
+        super(api, url, "GET", tClass, clientModifier, null);
         this.responseHandler = responseHandler;
     }
 
+    /**
+     * Creates an ImageAction, which is executed by the shared {@link AGHPB#getDefault() default instance}.
+     * @deprecated Use {@link #ImageAction(AGHPB, String, Class, Function, Function)}, so the action shares the connections, rate limit and caches of your AGHPB instance.
+     */
+    @Deprecated
+    public ImageAction(final String url, final Class<T> tClass, final Function<HttpRequest.Builder, HttpRequest.Builder> clientModifier, final Function<RestResponse<byte[]>, T> responseHandler) {
+        this(AGHPB.getDefault(), url, tClass, clientModifier, responseHandler);
+    }
+
     @Override
-    public T execute() {
-        try {
-            final HttpClient.Builder client = build();
-            final HttpRequest.Builder request = buildRequest();
-            final HttpResponse<byte[]> response = sendRequest(client.build(), request.build(), HttpResponse.BodyHandlers.ofByteArray(), 3);
-            return this.responseHandler.apply(new RestResponse<>(response, byte[].class));
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+    public CompletableFuture<T> submit() {
+        return submit(HttpResponse.BodyHandlers.ofByteArray(), byte[].class, responseHandler);
+    }
+
+    /**
+     * Adds a book to the {@link ImageCache} and the {@link DiskImageCache} of the AGHPB instance, if they are set. <br>
+     * The book is written to the disk cache in the background. Failures are ignored, as the book can always be downloaded again.
+     * @param api The AGHPB instance.
+     * @param book The book to store.
+     */
+    protected static void storeInCaches(final AGHPB api, final AGHPBook book) {
+        final ImageCache cache = api.getImageCache();
+        if(cache != null) {
+            cache.put(book);
+        }
+        final DiskImageCache diskCache = api.getDiskImageCache();
+        if(diskCache != null) {
+            try {
+                CompletableFuture.runAsync(() -> diskCache.put(book), api.getExecutor());
+            } catch (RejectedExecutionException ignored) {
+                // The AGHPB instance was closed in the meantime
+            }
         }
     }
 
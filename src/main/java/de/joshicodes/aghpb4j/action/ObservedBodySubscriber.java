@@ -0,0 +1,58 @@
+package de.joshicodes.aghpb4j.action;
+
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.function.LongConsumer;
+
+/**
+ * Passes the body of a response through to another BodySubscriber and reports the received bytes and the end of the body.
+ * @param <T> The type of the body.
+ */
+class ObservedBodySubscriber<T> implements HttpResponse.BodySubscriber<T> {
+
+    private final HttpResponse.BodySubscriber<T> delegate;
+    private final LongConsumer onBytes;
+    private final Runnable onComplete;
+
+    ObservedBodySubscriber(final HttpResponse.BodySubscriber<T> delegate, final LongConsumer onBytes, final Runnable onComplete) {
+        this.delegate = delegate;
+        this.onBytes = onBytes;
+        this.onComplete = onComplete;
+    }
+
+    @Override
+    public CompletionStage<T> getBody() {
+        return delegate.getBody();
+    }
+
+    @Override
+    public void onSubscribe(final Flow.Subscription subscription) {
+        delegate.onSubscribe(subscription);
+    }
+
+    @Override
+    public void onNext(final List<ByteBuffer> item) {
+        long bytes = 0;
+        for(ByteBuffer buffer : item) {
+            bytes += buffer.remaining();
+        }
+        // Counted before the delegate consumes the buffers
+        delegate.onNext(item);
+        onBytes.accept(bytes);
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+        delegate.onError(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        delegate.onComplete();
+        onComplete.run();
+    }
+
+}
@@ -1,44 +1,64 @@
 package de.joshicodes.aghpb4j.action;
 
+import de.joshicodes.aghpb4j.AGHPB;
+import de.joshicodes.aghpb4j.cache.DiskImageCache;
+import de.joshicodes.aghpb4j.cache.ImageCache;
 import de.joshicodes.aghpb4j.objects.AGHPBook;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
-public class RandomImageAction extends ImageAction<AGHPBook> {
+public class RandomImageAction extends BookImageAction {
 
     public static final String URL = "%s/random";
 
     private final String initialUrl;
-    private AGHPBook.BookImageType type = AGHPBook.BookImageType.PNG;
 
+    public RandomImageAction(final AGHPB api) {
+        super(api, String.format(URL, api.getUrl()), AGHPBook.BookImageType.PNG);
+        initialUrl = api.getUrl();
+    }
+
+    /**
+     * Creates a RandomImageAction for the given API url, which is executed by the shared {@link AGHPB#getDefault() default instance}.
+     * @param apiUrl The url of the AGHPB API.
+     * @deprecated Use {@link AGHPB#retrieveRandomBook()}, so the action shares the connections, rate limit and caches of your AGHPB instance.
+     */
+    @Deprecated
     public RandomImageAction(final String apiUrl) {
-        super(String.format(URL, apiUrl), AGHPBook.class, null, null);
+        super(AGHPB.getDefault(), String.format(URL, apiUrl), AGHPBook.BookImageType.PNG);
         initialUrl = apiUrl;
-        clientModifier = (request) -> {
-            request.header("Accept", "image/" + type.name().toLowerCase());
-            return request;
-        };
-        responseHandler = response -> {
-            final String contentType = response.httpResponse().headers().firstValue("Content-Type").orElse(null);
-            if(contentType == null || !contentType.startsWith("image/")) {
-                throw new IllegalStateException("Failed request to " + url + "! Response is not an image! " + "( " + response.rawBody() + " )." + " Content Type is " + contentType + ". Expected image/*.");
-            }
-            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            try {
-                baos.write(response.httpResponse().body());
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-            final String imageCategory = response.httpResponse().headers().firstValue("Book-Category").orElse(null);
-            final String bookName = response.httpResponse().headers().firstValue("Book-Name").orElse(null);
-            final String commitAuthor = response.httpResponse().headers().firstValue("Book-Commit-Author").orElse(null);
-            final String commitHash = response.httpResponse().headers().firstValue("Book-Commit-Hash").orElse(null);
-            final String commitUrl = response.httpResponse().headers().firstValue("Book-Commit-Url").orElse(null);
-            final int searchId = Integer.parseInt(response.httpResponse().headers().firstValue("Book-Search-Id").orElse("-1"));
-            // final Date dateAdded = new Date(response.httpResponse().headers().firstValue("Book-Date-Added").orElse(null));
-            return new AGHPBook(baos.toByteArray(), type, imageCategory, commitAuthor, commitHash, commitUrl, bookName, searchId);
-        };
+    }
+
+    /**
+     * The search id of a random book is not known before the response arrives.
+     * @return -1
+     */
+    @Override
+    public int getSearchId() {
+        return -1;
+    }
+
+    /**
+     * Every request for a random book should return a different book, so they are never coalesced.
+     * @return false
+     */
+    @Override
+    protected boolean isCoalescable() {
+        return false;
+    }
+
+    /**
+     * Executes the request asynchronously. <br>
+     * If the AGHPB instance has an {@link ImageCache} or a {@link DiskImageCache}, the retrieved book will be added to them,
+     * so that following requests for the same book don't need to download it again.
+     * @return A CompletableFuture for the book.
+     */
+    @Override
+    public CompletableFuture<AGHPBook> submit() {
+        return mapCancellable(super.submit(), book -> {
+            storeInCaches(api, book);
+            return book;
+        });
     }
 
     public RandomImageAction useType(final AGHPBook.BookImageType type) {
@@ -47,7 +67,7 @@ public class RandomImageAction extends ImageAction<AGHPBook> {
     }
 
     public RandomImageAction withCategory(final String category) {
-        final String cat = category != null ? ("?category=" + category) : "";
+        final String cat = category != null ? ("?category=" + AGHPB.encode(category)) : "";
         url = String.format(URL, this.initialUrl) + cat;
         return this;
     }
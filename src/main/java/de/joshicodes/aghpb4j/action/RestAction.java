@@ -3,25 +3,65 @@ package de.joshicodes.aghpb4j.action;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import de.joshicodes.aghpb4j.AGHPB;
+import de.joshicodes.aghpb4j.cache.ResponseCache;
+import de.joshicodes.aghpb4j.request.CircuitBreaker;
+import de.joshicodes.aghpb4j.request.EndpointPool;
+import de.joshicodes.aghpb4j.request.HedgingPolicy;
+import de.joshicodes.aghpb4j.request.RateLimiter;
+import de.joshicodes.aghpb4j.request.RequestCoalescer;
+import de.joshicodes.aghpb4j.request.RequestListener;
+import de.joshicodes.aghpb4j.request.RetryPolicy;
 
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
+import java.util.regex.Pattern;
 
 public class RestAction<T> {
 
+    /**
+     * The failure consumer used by {@link #queue(Consumer)}. Prints the stack trace of the failure.
+     */
+    public static final Consumer<Throwable> DEFAULT_FAILURE = Throwable::printStackTrace;
+
+    private static final AtomicLong REQUEST_IDS = new AtomicLong();
+    private static final Pattern ID_SEGMENT = Pattern.compile("/\\d+(?=/|$)");
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    protected final AGHPB api;
     protected String url;
     protected final String method;
     protected final Class<T> tClass;
 
     protected Function<HttpRequest.Builder, HttpRequest.Builder> clientModifier;
     protected final Function<RestResponse, T> responseHandler;
+    protected RetryPolicy retryPolicy;
+    protected boolean cacheable = false;
+    protected Duration timeout;
+    protected boolean compression = false;
 
-    public RestAction(final String url, final String method, final Class<T> tClass, final Function<HttpRequest.Builder, HttpRequest.Builder> clientModifier, final Function<RestResponse, T> responseHandler) {
+    public RestAction(final AGHPB api, final String url, final String method, final Class<T> tClass, final Function<HttpRequest.Builder, HttpRequest.Builder> clientModifier, final Function<RestResponse, T> responseHandler) {
+        this.api = api;
         this.url = url;
         this.method = method;
         this.tClass = tClass;
@@ -29,16 +69,119 @@ public class RestAction<T> {
         this.responseHandler = responseHandler;
     }
 
+    public RestAction(final AGHPB api, final String url, final String method, final Class<T> tClass, final Function<RestResponse, T> responseHandler) {
+        this(api, url, method, tClass, Function.identity(), responseHandler);
+    }
+
+    public RestAction(final AGHPB api, final String url, final String method, final Class<T> tClass) {
+        this(api, url, method, tClass, Function.identity(), response -> null);
+    }
+
+    public RestAction(final AGHPB api, final String url, final Class<T> tClass, final Function<HttpRequest.Builder, HttpRequest.Builder> clientModifier, final Function<RestResponse, T> responseHandler) {
+        this(api, url, "GET", tClass, clientModifier, responseHandler);
+    }
+
+    /**
+     * Creates a RestAction, which is executed by the shared {@link AGHPB#getDefault() default instance}.
+     * @deprecated Use {@link #RestAction(AGHPB, String, String, Class, Function, Function)}, so the action shares the connections, rate limit and caches of your AGHPB instance.
+     */
+    @Deprecated
+    public RestAction(final String url, final String method, final Class<T> tClass, final Function<HttpRequest.Builder, HttpRequest.Builder> clientModifier, final Function<RestResponse, T> responseHandler) {
+        this(AGHPB.getDefault(), url, method, tClass, clientModifier, responseHandler);
+    }
+
+    /**
+     * Creates a RestAction, which is executed by the shared {@link AGHPB#getDefault() default instance}.
+     * @deprecated Use {@link #RestAction(AGHPB, String, String, Class, Function)}, so the action shares the connections, rate limit and caches of your AGHPB instance.
+     */
+    @Deprecated
     public RestAction(final String url, final String method, final Class<T> tClass, final Function<RestResponse, T> responseHandler) {
-        this(url, method, tClass, Function.identity(), responseHandler);
+        this(AGHPB.getDefault(), url, method, tClass, Function.identity(), responseHandler);
     }
 
+    /**
+     * Creates a RestAction, which is executed by the shared {@link AGHPB#getDefault() default instance}.
+     * @deprecated Use {@link #RestAction(AGHPB, String, String, Class)}, so the action shares the connections, rate limit and caches of your AGHPB instance.
+     */
+    @Deprecated
     public RestAction(final String url, final String method, final Class<T> tClass) {
-        this(url, method, tClass, Function.identity(), response -> null);
+        this(AGHPB.getDefault(), url, method, tClass, Function.identity(), response -> null);
     }
 
+    /**
+     * Creates a RestAction, which is executed by the shared {@link AGHPB#getDefault() default instance}.
+     * @deprecated Use {@link #RestAction(AGHPB, String, Class, Function, Function)}, so the action shares the connections, rate limit and caches of your AGHPB instance.
+     */
+    @Deprecated
     public RestAction(final String url, final Class<T> tClass, final Function<HttpRequest.Builder, HttpRequest.Builder> clientModifier, final Function<RestResponse, T> responseHandler) {
-        this(url, "GET", tClass, clientModifier, responseHandler);
+        this(AGHPB.getDefault(), url, "GET", tClass, clientModifier, responseHandler);
+    }
+
+    /**
+     * Sets the RetryPolicy for this action. <br>
+     * If none is set, the RetryPolicy of the AGHPB instance is used.
+     * @param retryPolicy The RetryPolicy. Can be null to use the default.
+     * @return This RestAction.
+     */
+    public RestAction<T> useRetryPolicy(final RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    /**
+     * Sets whether the result of this action may be stored in and served from the {@link ResponseCache} of the AGHPB instance. <br>
+     * Only has an effect, if a ResponseCache was set and this is a GET request.
+     * @param cacheable true, to use the ResponseCache.
+     * @return This RestAction.
+     * @see AGHPB.Builder#setResponseCache(ResponseCache)
+     */
+    public RestAction<T> useCache(final boolean cacheable) {
+        this.cacheable = cacheable;
+        return this;
+    }
+
+    /**
+     * Sets whether the response may be compressed with gzip or deflate. <br>
+     * The body is decompressed while it is received, before it is read by the handler, so neither the compressed nor the decompressed body has to be buffered.
+     * Images are already compressed, so this is only useful for JSON responses.
+     * @param compression true, to send <code>Accept-Encoding: gzip, deflate</code>.
+     * @return This RestAction.
+     */
+    public RestAction<T> useCompression(final boolean compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    /**
+     * Sets the time, within which this action has to complete. <br>
+     * The timeout is one budget for everything: rate limit waits, connecting, all attempts and the delays between retries.
+     * Every attempt is sent with the remaining time as its request timeout. A retry or rate limit wait, which would end after the deadline, fails right away.
+     * Once the deadline has passed, the request is aborted and fails with an {@link HttpTimeoutException}. <br>
+     * If none is set, the request timeout of the AGHPB instance is used.
+     * @param timeout The timeout. Can be null to use the default.
+     * @return This RestAction.
+     * @see AGHPB.Builder#setRequestTimeout(Duration)
+     */
+    public RestAction<T> useTimeout(final Duration timeout) {
+        if(timeout != null && (timeout.isNegative() || timeout.isZero())) throw new IllegalArgumentException("Timeout must be positive.");
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Returns the timeout of this action.
+     * @return The timeout of this action, or the one of the AGHPB instance if none was set. Null, if there is no timeout.
+     */
+    public Duration getTimeout() {
+        return timeout != null ? timeout : api.getRequestTimeout();
+    }
+
+    /**
+     * Returns the RetryPolicy used by this action.
+     * @return The RetryPolicy of this action, or the one of the AGHPB instance if none was set.
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy != null ? retryPolicy : api.getRetryPolicy();
     }
 
     /**
@@ -55,7 +198,8 @@ public class RestAction<T> {
 
     /**
      * Executes the request asynchronously. <br>
-     * If you want to execute the request synchronously, use {@link #execute()} instead.
+     * If you want to execute the request synchronously, use {@link #execute()} instead. <br>
+     * If the request fails, the stack trace will be printed.
      * @param success The consumer that will be called when the request was successful. Can be null.
      *
      * @see #execute()
@@ -63,78 +207,345 @@ public class RestAction<T> {
      * @see #queue(Consumer, Consumer)
      */
     public void queue(final Consumer<T> success) {
-        queue(success, (e) -> {
-            throw new RuntimeException(e);
-        });
+        queue(success, DEFAULT_FAILURE);
     }
 
     /**
      * Executes the request asynchronously. <br>
-     * If you want to execute the request synchronously, use {@link #execute()} instead.
+     * If you want to execute the request synchronously, use {@link #execute()} instead. <br>
+     * This method does not block. The consumers will be called on a thread of the executor of the HttpClient.
      * @param success The consumer that will be called when the request was successful. Can be null.
      * @param failure The consumer that will be called when the request failed. Can be null.
      *
      * @see #execute()
+     * @see #submit()
      * @see #queue()
      * @see #queue(Consumer)
      */
     public void queue(final Consumer<T> success, final Consumer<Throwable> failure) {
-        CompletableFuture.runAsync(() -> {
+        submit().whenComplete((result, error) -> {
+            if(error != null) {
+                if(failure != null) failure.accept(unwrap(error));
+                return;
+            }
             try {
-                final T result = execute();
                 if(success != null) success.accept(result);
             } catch (Throwable e) {
                 if(failure != null) failure.accept(e);
             }
-        }).join();
+        });
+    }
+
+    /**
+     * Executes the request asynchronously and returns a CompletableFuture for the result. <br>
+     * The request is sent with {@link HttpClient#sendAsync(HttpRequest, HttpResponse.BodyHandler)}, so no thread is blocked while waiting for the response.
+     * Retries and rate limit waits are scheduled instead of slept. <br>
+     * Cancelling the returned future aborts the request.
+     * @return A CompletableFuture, which will be completed with the result of the request.
+     *
+     * @see #execute()
+     * @see #queue(Consumer, Consumer)
+     */
+    public CompletableFuture<T> submit() {
+        // The handler takes a raw RestResponse, so it accepts the String response as is
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final Function<RestResponse<String>, T> handler = (Function) responseHandler;
+        return submit(HttpResponse.BodyHandlers.ofString(), String.class, handler);
     }
 
     /**
      * Executes the request and returns the result. This method is blocking. <br>
-     * If you want to execute the request asynchronously, use {@link #queue()} instead.
+     * If you want to execute the request asynchronously, use {@link #queue()} or {@link #submit()} instead.
      * @return The result of the request
      */
     public T execute() {
         try {
-            final HttpClient.Builder client = build();
-            final HttpRequest.Builder request = buildRequest();
-            final HttpResponse<String> response = sendRequest(client.build(), request.build(), HttpResponse.BodyHandlers.ofString(), 3);
-            return responseHandler.apply(new RestResponse<>(response, String.class));
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+            return submit().join();
+        } catch (CompletionException | CancellationException e) {
+            final Throwable cause = unwrap(e);
+            if(cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(cause);
         }
     }
 
-    protected <C> HttpResponse<C> sendRequest(HttpClient client, HttpRequest request, HttpResponse.BodyHandler<C> handler, int retries) {
+    /**
+     * Sends the request of this action and applies the handler to the response.
+     * @param responseBodyHandler The BodyHandler for the response body. If compression is used, it receives the decompressed body.
+     * @param bodyClass The class of the response body.
+     * @param handler The handler, which converts the response to the result.
+     * @return A CompletableFuture for the result.
+     * @param <C> The type of the response body.
+     */
+    protected <C> CompletableFuture<T> submit(final HttpResponse.BodyHandler<C> responseBodyHandler, final Class<C> bodyClass, final Function<RestResponse<C>, T> handler) {
+        final HttpRequest.Builder builder;
+        final HttpRequest request;
         try {
-            final HttpResponse<C> response = client.send(request, handler);
-            if(response.headers().firstValue("x-ratelimit-remaining").orElse("1").equals("0")) {
-                // Rate limit
-                final long reset = Long.parseLong(response.headers().firstValue("x-ratelimit-reset").orElse("0"));
-                final long now = System.currentTimeMillis() / 1000;
-                final long diff = reset - now;
-                if(diff > 0) {
-                    // Sleep
-                    Thread.sleep(diff * 1000);
-                    // Retry
-                    return sendRequest(client, request, handler, retries - 1);
-                }
-            }
-            return response;
+            builder = buildRequest();
+            if(compression) builder.setHeader("Accept-Encoding", "gzip, deflate");
+            request = builder.build();
         } catch (Exception e) {
-            if(retries > 0) {
-                return sendRequest(client, request, handler, retries - 1);
+            return CompletableFuture.failedFuture(e);
+        }
+        final HttpResponse.BodyHandler<C> bodyHandler = compression ? DecompressingBodySubscriber.handler(responseBodyHandler) : responseBodyHandler;
+        final long deadline = deadline();
+        final ResponseCache responseCache = api.getResponseCache();
+        if(responseCache != null && cacheable && "GET".equalsIgnoreCase(request.method())) {
+            return submitCached(responseCache, builder, request, bodyHandler, bodyClass, handler, deadline);
+        }
+        return mapCancellable(send(request, bodyHandler, bodyClass, deadline), r -> handler.apply(new RestResponse<>(r, bodyClass)));
+    }
+
+    /**
+     * Serves the result from the ResponseCache, if it is fresh. Otherwise, the request is sent and, if a cached result has validators, made conditional.
+     */
+    @SuppressWarnings("unchecked")
+    private <C> CompletableFuture<T> submitCached(final ResponseCache responseCache, final HttpRequest.Builder builder, final HttpRequest request, final HttpResponse.BodyHandler<C> bodyHandler, final Class<C> bodyClass, final Function<RestResponse<C>, T> handler, final long deadline) {
+        final String key = request.uri() + " " + request.headers().firstValue("Accept").orElse("");
+        final ResponseCache.Entry entry = responseCache.get(key);
+        if(entry != null && entry.isFresh()) {
+            return CompletableFuture.completedFuture((T) entry.value());
+        }
+        HttpRequest conditional = request;
+        if(entry != null && entry.hasValidators()) {
+            final HttpRequest.Builder copy = builder.copy();
+            if(entry.etag() != null) copy.header("If-None-Match", entry.etag());
+            if(entry.lastModified() != null) copy.header("If-Modified-Since", entry.lastModified());
+            conditional = copy.build();
+        }
+        final Function<HttpResponse<C>, T> store = response -> {
+            final T result = handler.apply(new RestResponse<>(response, bodyClass));
+            return response.statusCode() == 200 ? (T) responseCache.put(key, response.headers(), result) : result;
+        };
+        return composeCancellable(send(conditional, bodyHandler, bodyClass, deadline), response -> {
+            if(response.statusCode() != 304) {
+                return CompletableFuture.completedFuture(store.apply(response));
             }
-            throw new RuntimeException(e);
+            discard(response);
+            if(entry != null) {
+                responseCache.refresh(key, entry, response.headers());
+                return CompletableFuture.completedFuture((T) entry.value());
+            }
+            // Coalesced with the conditional request of another caller, whose cached result we don't know
+            return mapCancellable(sendRequestAsync(api.getHttpClient(), request, bodyHandler, deadline), store);
+        });
+    }
+
+    /**
+     * Sends the request and lets it share one exchange with identical requests, if request coalescing is enabled.
+     */
+    private <C> CompletableFuture<HttpResponse<C>> send(final HttpRequest request, final HttpResponse.BodyHandler<C> bodyHandler, final Class<C> bodyClass, final long deadline) {
+        final RequestCoalescer coalescer = api.getRequestCoalescer();
+        if(coalescer != null && isCoalescable() && (bodyClass == String.class || bodyClass == byte[].class)) {
+            final RequestCoalescer.Key key = new RequestCoalescer.Key(request.uri().toString(), request.method(), request.headers().firstValue("Accept").orElse(null), bodyClass);
+            // The shared request runs until every caller gave up on it, each caller waits until its own deadline
+            return withDeadline(coalescer.coalesce(key, () -> dispatch(request, bodyHandler, NO_DEADLINE)), request.uri(), deadline);
         }
+        return dispatch(request, bodyHandler, deadline);
+    }
+
+    /**
+     * Fails the future with an {@link HttpTimeoutException}, if it is not completed before the deadline.
+     */
+    private <R> CompletableFuture<R> withDeadline(final CompletableFuture<R> future, final URI uri, final long deadline) {
+        if(deadline == NO_DEADLINE || future.isDone()) return future;
+        CompletableFuture.delayedExecutor(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS, api.getExecutor())
+                .execute(() -> future.completeExceptionally(timeout(uri, null)));
+        return future;
+    }
+
+    private HttpTimeoutException timeout(final URI uri, final Throwable lastError) {
+        final HttpTimeoutException exception = new HttpTimeoutException("Request to " + uri + " did not complete within the timeout of " + getTimeout().toMillis() + "ms.");
+        if(lastError != null) exception.initCause(lastError);
+        return exception;
     }
 
+    /**
+     * Sends the request, hedged if hedging is enabled and this action allows it.
+     */
+    private <C> CompletableFuture<HttpResponse<C>> dispatch(final HttpRequest request, final HttpResponse.BodyHandler<C> bodyHandler, final long deadline) {
+        final HedgingPolicy hedging = api.getHedgingPolicy();
+        if(hedging != null && isHedgeable()) {
+            final HedgedExchange<C> exchange = new HedgedExchange<>(hedging, api.getHttpClient(), request, bodyHandler, deadline);
+            exchange.start();
+            return exchange.result;
+        }
+        return sendRequestAsync(api.getHttpClient(), request, bodyHandler, deadline);
+    }
+
+    /**
+     * Returns whether identical requests of this action, which are in flight at the same time, may share one exchange. <br>
+     * Only used, if request coalescing is enabled on the AGHPB instance. Only responses read as a String or byte array are shared.
+     * @return true, if this is a GET request.
+     * @see AGHPB.Builder#setRequestCoalescing(boolean)
+     */
+    protected boolean isCoalescable() {
+        return "GET".equalsIgnoreCase(method);
+    }
+
+    /**
+     * Returns whether a slow request of this action may be sent a second time, if hedging is enabled on the AGHPB instance. <br>
+     * Only requests without side effects, whose response is read into memory, should be hedged.
+     * @return false by default.
+     * @see AGHPB.Builder#setHedgingPolicy(HedgingPolicy)
+     */
+    protected boolean isHedgeable() {
+        return false;
+    }
+
+    /**
+     * Sends the request asynchronously. <br>
+     * Before each attempt, the {@link CircuitBreaker} and a permit of the {@link RateLimiter} of the AGHPB instance are acquired.
+     * Failed attempts are retried according to the {@link RetryPolicy} of this action.
+     * If the API answers with 429, the request is queued again until the rate limit resets.
+     * The whole exchange is limited by the timeout of this action. Cancelling the returned future aborts the exchange.
+     * @param client The HttpClient to use.
+     * @param request The request to send.
+     * @param handler The BodyHandler for the response body.
+     * @return A CompletableFuture for the response.
+     * @param <C> The type of the response body.
+     */
+    protected <C> CompletableFuture<HttpResponse<C>> sendRequestAsync(final HttpClient client, final HttpRequest request, final HttpResponse.BodyHandler<C> handler) {
+        return sendRequestAsync(client, request, handler, deadline());
+    }
+
+    /**
+     * Sends the request and blocks until the response arrived. <br>
+     * The rate limit and the retries are handled like in {@link #sendRequestAsync(HttpClient, HttpRequest, HttpResponse.BodyHandler)}, the retries are decided by the {@link RetryPolicy} of this action.
+     * @deprecated The actions don't call this method anymore, so overriding it has no effect. Use {@link #sendRequestAsync(HttpClient, HttpRequest, HttpResponse.BodyHandler)}.
+     * @param client The HttpClient to use.
+     * @param request The request to send.
+     * @param handler The BodyHandler for the response body.
+     * @param retries Ignored.
+     * @return The response.
+     * @param <C> The type of the response body.
+     */
+    @Deprecated
+    protected <C> HttpResponse<C> sendRequest(final HttpClient client, final HttpRequest request, final HttpResponse.BodyHandler<C> handler, final int retries) {
+        try {
+            return sendRequestAsync(client, request, handler).join();
+        } catch (CompletionException | CancellationException e) {
+            final Throwable cause = unwrap(e);
+            if(cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Returns a Builder for a new HttpClient.
+     * @deprecated All actions share the HttpClient of the AGHPB instance, so this method isn't called anymore and overriding it has no effect.
+     * Use {@link AGHPB#getHttpClient()} or configure the client with {@link AGHPB#builder()}.
+     * @return A new HttpClient.Builder.
+     */
+    @Deprecated
     protected HttpClient.Builder build() {
         return HttpClient.newBuilder()
                 .followRedirects(HttpClient.Redirect.NORMAL)
                 .version(HttpClient.Version.HTTP_2);
     }
 
+    private <C> CompletableFuture<HttpResponse<C>> sendRequestAsync(final HttpClient client, final HttpRequest request, final HttpResponse.BodyHandler<C> handler, final long deadline) {
+        final Exchange<C> exchange = new Exchange<>(client, request, handler, deadline);
+        exchange.attempt();
+        return exchange.result;
+    }
+
+    /**
+     * Returns the point in time, at which a request of this action, which starts now, has to be completed.
+     * @return The deadline in {@link System#nanoTime()}, or {@link #NO_DEADLINE}.
+     */
+    private long deadline() {
+        final Duration timeout = getTimeout();
+        if(timeout == null) return NO_DEADLINE;
+        final long nanos = timeout.toNanos();
+        final long now = System.nanoTime();
+        return nanos >= NO_DEADLINE - now ? NO_DEADLINE : now + nanos;
+    }
+
+    /**
+     * Applies the function to the result of the source. Unlike {@link CompletableFuture#thenApply(Function)},
+     * cancelling the returned future also cancels the source, so that the request is aborted.
+     * @param source The source future.
+     * @param function The function.
+     * @return The new future.
+     * @param <A> The type of the source.
+     * @param <B> The type of the result.
+     */
+    protected static <A, B> CompletableFuture<B> mapCancellable(final CompletableFuture<A> source, final Function<? super A, ? extends B> function) {
+        final CompletableFuture<B> mapped = source.thenApply(function);
+        mapped.whenComplete((result, error) -> {
+            if(mapped.isCancelled()) source.cancel(true);
+        });
+        return mapped;
+    }
+
+    /**
+     * Composes the source with the future returned by the function. Unlike {@link CompletableFuture#thenCompose(Function)},
+     * cancelling the returned future also cancels the source and the composed future, so that the request is aborted.
+     * @param source The source future.
+     * @param function The function.
+     * @return The new future.
+     * @param <A> The type of the source.
+     * @param <B> The type of the result.
+     */
+    protected static <A, B> CompletableFuture<B> composeCancellable(final CompletableFuture<A> source, final Function<? super A, ? extends CompletableFuture<B>> function) {
+        final CompletableFuture<B> composed = new CompletableFuture<>();
+        source.whenComplete((value, error) -> {
+            if(error != null) {
+                composed.completeExceptionally(error);
+                return;
+            }
+            final CompletableFuture<B> next;
+            try {
+                next = function.apply(value);
+            } catch (Throwable e) {
+                composed.completeExceptionally(e);
+                return;
+            }
+            next.whenComplete((result, nextError) -> {
+                if(nextError != null) {
+                    composed.completeExceptionally(nextError);
+                } else {
+                    composed.complete(result);
+                }
+            });
+            composed.whenComplete((result, composedError) -> {
+                if(composed.isCancelled()) next.cancel(true);
+            });
+        });
+        composed.whenComplete((result, error) -> {
+            if(composed.isCancelled()) source.cancel(true);
+        });
+        return composed;
+    }
+
+    /**
+     * Unwraps CompletionExceptions and ExecutionExceptions to their cause.
+     * @param throwable The throwable to unwrap.
+     * @return The cause, or the throwable itself.
+     */
+    protected static Throwable unwrap(Throwable throwable) {
+        while((throwable instanceof CompletionException || throwable instanceof ExecutionException) && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        return throwable;
+    }
+
+    /**
+     * Closes the body of a response, which will not be passed to the handler, e.g. an InputStream, which would keep the connection busy.
+     * @param response The response.
+     */
+    protected static void discard(final HttpResponse<?> response) {
+        if(response.body() instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception ignored) { }
+        }
+    }
+
     protected HttpRequest.Builder buildRequest() {
         HttpRequest.Builder request = HttpRequest.newBuilder()
                 .uri(URI.create(url))
@@ -145,6 +556,377 @@ public class RestAction<T> {
         return request;
     }
 
+    /**
+     * A single request with all of its attempts. <br>
+     * Retries are scheduled on the executor of the AGHPB instance, so an attempt never runs on the stack of the previous one.
+     * @param <C> The type of the response body.
+     */
+    private class Exchange<C> {
+
+        private final HttpClient client;
+        private final HttpRequest request;
+        private final HttpResponse.BodyHandler<C> handler;
+        private final RetryPolicy retryPolicy = getRetryPolicy();
+        private final CircuitBreaker circuitBreaker = api.getCircuitBreaker();
+        private final RateLimiter rateLimiter = api.getRateLimiter();
+        private final RequestListener listener = api.getRequestListener();
+        private final EndpointPool pool = api.getEndpointPool();
+        private final Set<EndpointPool.Endpoint> tried = new HashSet<>();
+        private final CompletableFuture<HttpResponse<C>> result = new CompletableFuture<>();
+        private final RequestListener.Request info;
+        private final long start = System.nanoTime();
+        private final long deadline;
+        private volatile long attemptStart;
+        private volatile EndpointPool.Endpoint endpoint;
+        private volatile CompletableFuture<HttpResponse<C>> inFlight;
+        /**
+         * The permit of the RateLimiter, which the next attempt waits for.
+         */
+        private volatile CompletableFuture<Void> permit;
+        /**
+         * Called whenever an attempt was sent, after its rate limit wait. Can be null.
+         */
+        private Runnable onSent;
+        private int retries = 0;
+
+        private Exchange(final HttpClient client, final HttpRequest request, final HttpResponse.BodyHandler<C> handler, final long deadline) {
+            this.client = client;
+            this.request = request;
+            this.handler = handler;
+            this.deadline = deadline;
+            if(listener != null) {
+                this.info = new RequestListener.Request(REQUEST_IDS.incrementAndGet(), endpoint(request.uri()), request.method(), request.uri());
+                listener.onRequestStart(info);
+                result.whenComplete((response, error) -> listener.onComplete(info, response != null ? response.statusCode() : -1, System.nanoTime() - start, error != null ? unwrap(error) : null));
+            } else {
+                this.info = null;
+            }
+            // Cancelling the result or reaching the deadline aborts the attempt, which is in flight.
+            // An attempt, which still waits for the rate limit, gives up its place in the queue, so it doesn't take a token.
+            result.whenComplete((response, error) -> {
+                final CompletableFuture<Void> waiting = permit;
+                if(waiting != null) waiting.cancel(true);
+                final CompletableFuture<HttpResponse<C>> attempt = inFlight;
+                if(attempt != null) attempt.cancel(true);
+            });
+            if(deadline != NO_DEADLINE) {
+                try {
+                    CompletableFuture.delayedExecutor(Math.max(0, deadline - start), TimeUnit.NANOSECONDS, api.getExecutor())
+                            .execute(() -> result.completeExceptionally(timeout(null)));
+                } catch (RejectedExecutionException e) {
+                    result.completeExceptionally(new IllegalStateException("Could not send request to " + request.uri() + ", the executor was shut down.", e));
+                }
+            }
+        }
+
+        private void attempt() {
+            if(result.isDone()) return;
+            if(circuitBreaker != null && !circuitBreaker.tryAcquire()) {
+                result.completeExceptionally(new CircuitBreaker.CircuitOpenException("Request to " + request.uri() + " rejected, the circuit breaker is open. Retry in " + circuitBreaker.getRemainingOpenTime() + "ms."));
+                return;
+            }
+            if(TimeUnit.MILLISECONDS.toNanos(rateLimiter.getDelay()) >= remaining()) {
+                // The rate limit resets after the deadline, don't wait for nothing
+                result.completeExceptionally(timeout(null));
+                return;
+            }
+            final long waitStart = listener != null ? System.nanoTime() : 0;
+            final CompletableFuture<Void> permit = rateLimiter.acquire();
+            this.permit = permit;
+            if(result.isDone()) permit.cancel(true);
+            final boolean waiting = listener != null && !permit.isDone();
+            final int attempt = retries + 1;
+            permit.thenCompose(v -> {
+                        if(result.isDone()) return CompletableFuture.<HttpResponse<C>>failedFuture(new CancellationException());
+                        // The endpoint is chosen after the rate limit wait, so it reflects the state at the time of sending
+                        final HttpRequest routed = withTimeout(route());
+                        attemptStart = System.nanoTime();
+                        if(listener != null && waiting) listener.onRateLimitWait(info, attemptStart - waitStart);
+                        if(onSent != null) onSent.run();
+                        final CompletableFuture<HttpResponse<C>> sent = client.sendAsync(routed, listener == null ? handler : observe(attempt));
+                        inFlight = sent;
+                        if(result.isCancelled()) sent.cancel(true);
+                        return sent;
+                    })
+                    .whenComplete(this::onResponse);
+        }
+
+        /**
+         * Returns the time until the deadline.
+         * @return The remaining time in nanoseconds. {@link #NO_DEADLINE}, if there is no deadline.
+         */
+        private long remaining() {
+            return deadline == NO_DEADLINE ? NO_DEADLINE : deadline - System.nanoTime();
+        }
+
+        /**
+         * Limits the request timeout of the attempt to the remaining time.
+         */
+        private HttpRequest withTimeout(final HttpRequest attempt) {
+            if(deadline == NO_DEADLINE) return attempt;
+            final Duration remaining = Duration.ofNanos(Math.max(1, remaining()));
+            if(attempt.timeout().isPresent() && attempt.timeout().get().compareTo(remaining) <= 0) return attempt;
+            return HttpRequest.newBuilder(attempt, (name, value) -> true).timeout(remaining).build();
+        }
+
+        private HttpTimeoutException timeout(final Throwable lastError) {
+            return RestAction.this.timeout(request.uri(), lastError);
+        }
+
+        /**
+         * Selects the endpoint for the next attempt and returns the request for it.
+         */
+        private HttpRequest route() {
+            if(pool == null) return request;
+            final EndpointPool.Endpoint selected = pool.select(tried);
+            tried.add(selected);
+            pool.onSend(selected);
+            endpoint = selected;
+            return pool.route(request, selected);
+        }
+
+        /**
+         * Reports the outcome of the attempt to the pool and returns whether the request can fail over to another endpoint.
+         */
+        private boolean report(final boolean failed) {
+            final EndpointPool.Endpoint sent = endpoint;
+            if(pool == null || sent == null) return false;
+            endpoint = null;
+            final long latency = System.nanoTime() - attemptStart;
+            if(!failed) {
+                pool.onSuccess(sent, latency);
+                return false;
+            }
+            pool.onFailure(sent, latency);
+            return pool.hasAlternative(tried);
+        }
+
+        /**
+         * Wraps the BodyHandler, so that the headers, the received bytes and the end of the body are reported to the listener.
+         */
+        private HttpResponse.BodyHandler<C> observe(final int attempt) {
+            return responseInfo -> {
+                final long headersAt = System.nanoTime();
+                listener.onResponseHeaders(info, attempt, responseInfo.statusCode(), headersAt - attemptStart);
+                return new ObservedBodySubscriber<>(handler.apply(responseInfo),
+                        bytes -> listener.onBytesReceived(info, bytes),
+                        () -> listener.onBodyComplete(info, attempt, System.nanoTime() - headersAt));
+            };
+        }
+
+        /**
+         * Returns the path of the uri relative to the url of the API, with numeric ids replaced by <code>{id}</code>.
+         */
+        private String endpoint(final URI uri) {
+            String path = uri.getRawPath() != null ? uri.getRawPath() : "";
+            final String base = URI.create(api.getUrl()).getRawPath();
+            if(base != null && !base.isEmpty() && path.startsWith(base)) {
+                path = path.substring(base.length());
+            }
+            return ID_SEGMENT.matcher(path).replaceAll("/{id}");
+        }
+
+        private void onResponse(final HttpResponse<C> response, final Throwable error) {
+            inFlight = null;
+            if(result.isDone()) {
+                // Cancelled while the attempt was in flight
+                final EndpointPool.Endpoint sent = endpoint;
+                if(pool != null && sent != null) {
+                    endpoint = null;
+                    pool.onCancel(sent);
+                }
+                if(response != null) discard(response);
+                return;
+            }
+            if(error != null) {
+                final Throwable cause = unwrap(error);
+                if(circuitBreaker != null) circuitBreaker.onFailure();
+                final EndpointPool.Endpoint failed = endpoint;
+                if(report(true) && retryPolicy.isRetryable(cause)) {
+                    // Another endpoint is up, fail over right away. This does not count as a retry.
+                    failover(failed, -1, cause);
+                    return;
+                }
+                if(retries < retryPolicy.getMaxRetries() && retryPolicy.isRetryable(cause)) {
+                    retry(-1, cause);
+                } else {
+                    result.completeExceptionally(cause);
+                }
+                return;
+            }
+            rateLimiter.update(response);
+            final int status = response.statusCode();
+            final EndpointPool.Endpoint sent = endpoint;
+            // A status, which is not retried (e.g. 501), would be answered the same by every endpoint and doesn't mean the endpoint is down
+            if(report(status >= 500 && retryPolicy.isRetryable(status))) {
+                if(circuitBreaker != null) circuitBreaker.onFailure();
+                discard(response);
+                failover(sent, status, null);
+                return;
+            }
+            if(status == 429) {
+                // The API is reachable, it just wants us to slow down
+                if(circuitBreaker != null) circuitBreaker.onSuccess();
+                if(rateLimiter.getDelay() > 0) {
+                    // The limiter holds the attempt back until the limit resets, so this does not count as a retry
+                    discard(response);
+                    schedule(0);
+                    return;
+                }
+                if(retries < retryPolicy.getMaxRetries()) {
+                    retry(response);
+                    return;
+                }
+            } else if(retryPolicy.isRetryable(status)) {
+                if(circuitBreaker != null) circuitBreaker.onFailure();
+                if(retries < retryPolicy.getMaxRetries()) {
+                    retry(response);
+                    return;
+                }
+            } else if(circuitBreaker != null) {
+                circuitBreaker.onSuccess();
+            }
+            result.complete(response);
+        }
+
+        private void retry(final HttpResponse<C> response) {
+            final long delay = retryPolicy.getDelay(retries + 1);
+            if(TimeUnit.MILLISECONDS.toNanos(delay) >= remaining()) {
+                // No time left for another attempt, so this response is the result
+                result.complete(response);
+                return;
+            }
+            discard(response);
+            retry(response.statusCode(), null, delay);
+        }
+
+        private void retry(final int statusCode, final Throwable error) {
+            final long delay = retryPolicy.getDelay(retries + 1);
+            if(TimeUnit.MILLISECONDS.toNanos(delay) >= remaining()) {
+                // The retry would start after the deadline
+                result.completeExceptionally(timeout(error));
+                return;
+            }
+            retry(statusCode, error, delay);
+        }
+
+        private void retry(final int statusCode, final Throwable error, final long delay) {
+            retries++;
+            if(listener != null) listener.onRetry(info, retries, statusCode, error, delay);
+            schedule(delay);
+        }
+
+        private void failover(final EndpointPool.Endpoint failed, final int statusCode, final Throwable error) {
+            if(listener != null) listener.onFailover(info, failed.getUrl(), statusCode, error);
+            schedule(0);
+        }
+
+        private void schedule(final long delay) {
+            try {
+                final Executor executor = delay > 0 ? CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, api.getExecutor()) : api.getExecutor();
+                executor.execute(this::attempt);
+            } catch (RejectedExecutionException e) {
+                result.completeExceptionally(new IllegalStateException("Could not retry request to " + request.uri() + ", the executor was shut down.", e));
+            }
+        }
+
+    }
+
+    /**
+     * A request, which is sent a second time, if its headers don't arrive within the delay of the {@link HedgingPolicy} after it was sent. <br>
+     * The time the first request waits for the rate limit does not count, and no hedge is sent while the rate limit holds requests back. <br>
+     * Both requests are separate exchanges with their own retries. The first response wins and the other exchange is cancelled.
+     * @param <C> The type of the response body.
+     */
+    private class HedgedExchange<C> {
+
+        private final HedgingPolicy hedging;
+        private final HttpClient client;
+        private final HttpRequest request;
+        private final HttpResponse.BodyHandler<C> handler;
+        private final long deadline;
+        private final CompletableFuture<HttpResponse<C>> result = new CompletableFuture<>();
+        private final List<CompletableFuture<HttpResponse<C>>> attempts = new CopyOnWriteArrayList<>();
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicBoolean sent = new AtomicBoolean();
+        private final AtomicBoolean sampled = new AtomicBoolean();
+        private volatile long start;
+        private volatile boolean headers = false;
+
+        private HedgedExchange(final HedgingPolicy hedging, final HttpClient client, final HttpRequest request, final HttpResponse.BodyHandler<C> handler, final long deadline) {
+            this.hedging = hedging;
+            this.client = client;
+            this.request = request;
+            this.handler = handler;
+            this.deadline = deadline;
+        }
+
+        private void start() {
+            hedging.onRequest();
+            result.whenComplete((response, error) -> attempts.forEach(attempt -> attempt.cancel(true)));
+            launch(false, responseInfo -> {
+                headers = true;
+                sample();
+                return handler.apply(responseInfo);
+            }, this::onSent);
+        }
+
+        /**
+         * Starts the latency clock and the hedge timer, when the first request was sent for the first time.
+         */
+        private void onSent() {
+            if(!sent.compareAndSet(false, true)) return;
+            start = System.nanoTime();
+            try {
+                CompletableFuture.delayedExecutor(hedging.getDelay(), TimeUnit.NANOSECONDS, api.getExecutor()).execute(this::hedge);
+            } catch (RejectedExecutionException ignored) {
+                // The AGHPB instance was closed, the first request is answered without a hedge
+            }
+        }
+
+        private void hedge() {
+            if(headers || result.isDone() || running.get() == 0) return;
+            // The hedge would only wait for the rate limit as well and take a second permit for the same call
+            if(api.getRateLimiter().getDelay() > 0 || !hedging.tryHedge()) return;
+            launch(true, handler, null);
+        }
+
+        /**
+         * Records the latency of the first request once, either when its headers arrive or when it lost against the hedge.
+         */
+        private void sample() {
+            if(sampled.compareAndSet(false, true)) hedging.recordLatency(System.nanoTime() - start);
+        }
+
+        private void launch(final boolean hedge, final HttpResponse.BodyHandler<C> bodyHandler, final Runnable onSent) {
+            running.incrementAndGet();
+            // The hedge shares the deadline of the first request
+            final Exchange<C> exchange = new Exchange<>(client, request, bodyHandler, deadline);
+            exchange.onSent = onSent;
+            exchange.attempt();
+            final CompletableFuture<HttpResponse<C>> attempt = exchange.result;
+            attempts.add(attempt);
+            if(result.isDone()) attempt.cancel(true);
+            attempt.whenComplete((response, error) -> {
+                if(error == null) {
+                    if(result.complete(response)) {
+                        if(hedge) {
+                            hedging.onHedgeWin();
+                            // The first request is cancelled, its latency is at least the time until now.
+                            // Leaving it out would only keep the fast requests and lower the percentile.
+                            sample();
+                        }
+                    } else {
+                        discard(response);
+                    }
+                } else if(running.decrementAndGet() == 0) {
+                    result.completeExceptionally(unwrap(error));
+                }
+            });
+        }
+
+    }
+
     public record RestResponse<A>(HttpResponse<A> httpResponse, Class<A> aClass) {
 
         public String rawBody() {
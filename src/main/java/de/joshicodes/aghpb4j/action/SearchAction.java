@@ -0,0 +1,99 @@
+package de.joshicodes.aghpb4j.action;
+
+import de.joshicodes.aghpb4j.AGHPB;
+import de.joshicodes.aghpb4j.flow.SearchPublisher;
+import de.joshicodes.aghpb4j.objects.AGHPBook;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Searches for books. <br>
+ * The response is decoded while it is read, so the raw body and a JSON tree of it are never held in memory.
+ * With {@link #stream()}, the books can be processed before the whole response has arrived. <br>
+ * The response is requested with gzip or deflate compression and decompressed while it is read.
+ */
+public class SearchAction extends RestAction<List<AGHPBook>> {
+
+    public SearchAction(final AGHPB api, final String url) {
+        super(api, url, "GET", null, null, null);
+        this.cacheable = true;
+        this.compression = true;
+    }
+
+    @Override
+    public CompletableFuture<List<AGHPBook>> submit() {
+        return submit(HttpResponse.BodyHandlers.ofInputStream(), InputStream.class, response -> {
+            final List<AGHPBook> books = new ArrayList<>();
+            try (SearchResultReader reader = open(response.httpResponse())) {
+                reader.forEachRemaining(books::add);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return books;
+        });
+    }
+
+    /**
+     * Retrieves the books as a lazy Stream, which reads the next book from the response only when it is needed. <br>
+     * The Stream must be closed after use, e.g. with try-with-resources, otherwise the connection can't be reused.
+     * @return A RestAction for the Stream of books. The AGHPBooks will not contain any image data.
+     */
+    public RestAction<Stream<AGHPBook>> stream() {
+        return new BodyAction<>(api, url, clientModifier, HttpResponse.BodyHandlers.ofInputStream(), InputStream.class, response -> {
+            final SearchResultReader reader = open(response.httpResponse());
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(reader, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                    .onClose(() -> {
+                        try {
+                            reader.close();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        }).useRetryPolicy(retryPolicy).useTimeout(timeout).useCompression(compression);
+    }
+
+    /**
+     * Publishes the books of this search to a {@link java.util.concurrent.Flow.Subscriber}. The search is sent, when the first book is requested.
+     * @return A Publisher for the books. The AGHPBooks will not contain any image data.
+     */
+    public SearchPublisher publish() {
+        return new SearchPublisher(api, this, null);
+    }
+
+    /**
+     * Publishes the books of this search together with their images to a {@link java.util.concurrent.Flow.Subscriber}. <br>
+     * Images are only retrieved for requested books, so the demand of the subscriber limits the amount of requests in flight.
+     * @param imageType The type of the images.
+     * @return A Publisher for the books with images.
+     * @see SearchPublisher#setMaxInFlight(int)
+     */
+    public SearchPublisher publish(final AGHPBook.BookImageType imageType) {
+        if(imageType == null) throw new IllegalArgumentException("Image type cannot be null.");
+        return new SearchPublisher(api, this, imageType);
+    }
+
+    private static SearchResultReader open(final HttpResponse<InputStream> response) {
+        if(response.statusCode() != 200) {
+            String body;
+            try (InputStream inputStream = response.body()) {
+                body = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                body = null;
+            }
+            throw new IllegalStateException("Response is not a JSON array" + (body != null && !body.isEmpty() ? " ( " + body + " )" : "") + ". Status Code is " + response.statusCode() + ".");
+        }
+        return new SearchResultReader(response.body());
+    }
+
+}
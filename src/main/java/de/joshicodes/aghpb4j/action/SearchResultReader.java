@@ -0,0 +1,127 @@
+package de.joshicodes.aghpb4j.action;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import de.joshicodes.aghpb4j.objects.AGHPBook;
+import de.joshicodes.aghpb4j.objects.ImagePayload;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the books of a search response one by one, directly from the response body. <br>
+ * Only the book, which is currently read, is held in memory. Elements, which are not objects or miss one of the required fields, are skipped.
+ */
+public class SearchResultReader implements Iterator<AGHPBook>, Closeable {
+
+    private final JsonReader reader;
+    private AGHPBook next;
+    private boolean started = false;
+    private boolean finished = false;
+
+    public SearchResultReader(final InputStream inputStream) {
+        this.reader = new JsonReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(next != null) return true;
+        if(finished) return false;
+        try {
+            if(!started) {
+                if(reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    throw new IllegalStateException("Response is not a JSON array");
+                }
+                reader.beginArray();
+                started = true;
+            }
+            while(reader.hasNext()) {
+                final AGHPBook book = readBook();
+                if(book != null) {
+                    next = book;
+                    return true;
+                }
+            }
+            reader.endArray();
+            finished = true;
+            close();
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (JsonParseException e) {
+            throw new IllegalStateException("Response is not valid JSON", e);
+        }
+    }
+
+    @Override
+    public AGHPBook next() {
+        if(!hasNext()) throw new NoSuchElementException();
+        final AGHPBook book = next;
+        next = null;
+        return book;
+    }
+
+    /**
+     * Reads the next element of the array.
+     * @return The book, or null if the element is not a valid book.
+     */
+    private AGHPBook readBook() throws IOException {
+        if(reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        int searchId = -1;
+        String name = null, category = null, dateAdded = null, commitUrl = null, commitAuthor = null, commitHash = null;
+        reader.beginObject();
+        while(reader.hasNext()) {
+            final String field = reader.nextName();
+            if(reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (field) {
+                case "search_id" -> {
+                    final JsonToken token = reader.peek();
+                    if(token != JsonToken.STRING && token != JsonToken.NUMBER) {
+                        reader.skipValue();
+                        searchId = -1;
+                        continue;
+                    }
+                    // Read as a string first, so an invalid id is consumed and the rest of the element can still be read
+                    final String value = reader.nextString();
+                    try {
+                        searchId = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        searchId = -1;
+                    }
+                }
+                case "name" -> name = reader.nextString();
+                case "category" -> category = reader.nextString();
+                case "date_added" -> dateAdded = reader.nextString();
+                case "commit_url" -> commitUrl = reader.nextString();
+                case "commit_author" -> commitAuthor = reader.nextString();
+                case "commit_hash" -> commitHash = reader.nextString();
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if(searchId < 0 || name == null || category == null || dateAdded == null || commitUrl == null || commitAuthor == null || commitHash == null) {
+            return null;
+        }
+        return new AGHPBook((ImagePayload) null, null, category, commitAuthor, commitHash, commitUrl, name, searchId);
+    }
+
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        reader.close();
+    }
+
+}
@@ -0,0 +1,23 @@
+package de.joshicodes.aghpb4j.cache;
+
+/**
+ * A snapshot of the statistics of a cache.
+ * @param hits The amount of lookups, which found a value.
+ * @param misses The amount of lookups, which found no value.
+ * @param evictions The amount of values, which were removed to make room for new ones.
+ * @param size The amount of cached values.
+ * @param weight The total weight of all cached values, e.g. in bytes.
+ * @param maxWeight The maximum weight of the cache.
+ */
+public record CacheStats(long hits, long misses, long evictions, int size, long weight, long maxWeight) {
+
+    /**
+     * Returns the ratio of lookups, which found a value.
+     * @return The hit rate between 0 and 1, or 0 if there were no lookups.
+     */
+    public double hitRate() {
+        final long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+}
@@ -0,0 +1,373 @@
+package de.joshicodes.aghpb4j.cache;
+
+import de.joshicodes.aghpb4j.objects.AGHPBook;
+import de.joshicodes.aghpb4j.objects.ImagePayload;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Persistent cache for books with image data, which survives restarts. <br>
+ * Every book is stored in its own file in the cache directory, together with the metadata of its Book-* headers.
+ * The file name contains the search id, the image type and the commit hash of the book. <br>
+ * Files are written to a temporary file first and then atomically moved into place, so a crash never leaves a broken entry behind.
+ * Reads are done with memory-mapped I/O, the images of returned books are views of the mapped files and not copied to the heap. <br>
+ * The cache is bounded by the total size of its files. If it grows larger, the least recently used files are deleted. <br>
+ * The recency of the books is tracked in memory and only persisted as the modification time of the files by {@link #flush()},
+ * so reading a book doesn't write to the disk.
+ */
+public class DiskImageCache {
+
+    private static final String EXTENSION = ".book";
+    private static final int MAGIC = 0x41474842; // AGHB
+    private static final byte VERSION = 1;
+
+    private record Entry(Path path, String commitHash, long size) { }
+    private record Access(Path path, long time) { }
+
+    private final Path directory;
+    private final long maxBytes;
+    private final LinkedHashMap<ImageCache.Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Access times, which have not been written to the files yet
+    private final HashMap<ImageCache.Key, Access> accessed = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private long size = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a new DiskImageCache and loads the index of the files, which are already in the directory.
+     * @param directory The directory to store the books in. Will be created, if it does not exist.
+     * @param maxBytes The maximum total size of all files in bytes.
+     * @throws IOException If the directory could not be created or read.
+     */
+    public DiskImageCache(final Path directory, final long maxBytes) throws IOException {
+        if(directory == null) throw new IllegalArgumentException("Directory cannot be null.");
+        if(maxBytes <= 0) throw new IllegalArgumentException("maxBytes must be greater than 0.");
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        loadIndex();
+    }
+
+    /**
+     * Returns the cached book, regardless of its commit hash.
+     * @param searchId The search id of the book.
+     * @param type The image type of the book.
+     * @return The book, or null if it is not cached.
+     */
+    public AGHPBook get(final int searchId, final AGHPBook.BookImageType type) {
+        return get(searchId, type, null);
+    }
+
+    /**
+     * Returns the cached book.
+     * @param searchId The search id of the book.
+     * @param type The image type of the book.
+     * @param commitHash The commit hash the book must have. Can be null to accept any commit.
+     * @return The book, or null if it is not cached or has a different commit hash.
+     */
+    public AGHPBook get(final int searchId, final AGHPBook.BookImageType type, final String commitHash) {
+        final ImageCache.Key key = new ImageCache.Key(searchId, type);
+        final Entry entry;
+        lock.lock();
+        try {
+            entry = entries.get(key);
+        } finally {
+            lock.unlock();
+        }
+        if(entry == null || (commitHash != null && !sanitize(commitHash).equals(entry.commitHash()))) {
+            misses.increment();
+            return null;
+        }
+        try {
+            final AGHPBook book = read(entry.path());
+            lock.lock();
+            try {
+                if(entries.get(key) == entry) accessed.put(key, new Access(entry.path(), System.currentTimeMillis()));
+            } finally {
+                lock.unlock();
+            }
+            hits.increment();
+            return book;
+        } catch (IOException | RuntimeException e) {
+            // The file was deleted or is broken, forget about it
+            remove(key, entry);
+            misses.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Writes a book to the cache. Replaces an older commit of the same book. <br>
+     * Books without image data or without a valid search id are ignored.
+     * @param book The book.
+     * @throws UncheckedIOException If the book could not be written.
+     */
+    public void put(final AGHPBook book) {
+        if(book == null || !book.hasImage() || book.type() == null || book.searchId() < 0) return;
+        final ImageCache.Key key = new ImageCache.Key(book.searchId(), book.type());
+        final String commitHash = sanitize(book.commitHash());
+        final Path target = directory.resolve(book.searchId() + "-" + book.type().name().toLowerCase() + "-" + commitHash + EXTENSION);
+        final long fileSize;
+        try {
+            final Path temp = Files.createTempFile(directory, "book-", ".tmp");
+            try {
+                write(temp, book);
+                fileSize = Files.size(temp);
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write book " + book.searchId() + " to the disk cache", e);
+        }
+        final List<Path> delete = new ArrayList<>();
+        lock.lock();
+        try {
+            final Entry previous = entries.put(key, new Entry(target, commitHash, fileSize));
+            accessed.remove(key);
+            if(previous != null) {
+                size -= previous.size();
+                if(!previous.path().equals(target)) delete.add(previous.path());
+            }
+            size += fileSize;
+            evict(delete);
+        } finally {
+            lock.unlock();
+        }
+        deleteAll(delete);
+        if(!delete.isEmpty()) flush();
+    }
+
+    /**
+     * Persists the recency of the books, which were read since the last flush, as the modification time of their files. <br>
+     * Called after books were evicted and when the AGHPB instance is closed, so the least recently used books are still known after a restart.
+     */
+    public void flush() {
+        final List<Access> touched;
+        lock.lock();
+        try {
+            touched = new ArrayList<>(accessed.values());
+            accessed.clear();
+        } finally {
+            lock.unlock();
+        }
+        for(Access access : touched) {
+            try {
+                Files.setLastModifiedTime(access.path(), FileTime.fromMillis(access.time()));
+            } catch (IOException ignored) {
+                // The file was deleted in the meantime
+            }
+        }
+    }
+
+    /**
+     * Removes a book from the cache and deletes its file.
+     * @param searchId The search id of the book.
+     * @param type The image type of the book.
+     */
+    public void invalidate(final int searchId, final AGHPBook.BookImageType type) {
+        final Entry removed;
+        lock.lock();
+        try {
+            final ImageCache.Key key = new ImageCache.Key(searchId, type);
+            removed = entries.remove(key);
+            accessed.remove(key);
+            if(removed != null) size -= removed.size();
+        } finally {
+            lock.unlock();
+        }
+        if(removed != null) deleteAll(List.of(removed.path()));
+    }
+
+    /**
+     * Returns the hit, miss and eviction statistics of this cache. The weight is the total size of all files in bytes.
+     * @return The statistics.
+     */
+    public CacheStats getStats() {
+        lock.lock();
+        try {
+            return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), entries.size(), size, maxBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private void remove(final ImageCache.Key key, final Entry entry) {
+        lock.lock();
+        try {
+            if(entries.remove(key, entry)) {
+                size -= entry.size();
+                accessed.remove(key);
+            }
+        } finally {
+            lock.unlock();
+        }
+        deleteAll(List.of(entry.path()));
+    }
+
+    /**
+     * Removes the least recently used entries, until the cache fits. Must be called while holding the lock.
+     */
+    private void evict(final List<Path> delete) {
+        final Iterator<Map.Entry<ImageCache.Key, Entry>> iterator = entries.entrySet().iterator();
+        while(size > maxBytes && iterator.hasNext()) {
+            final Map.Entry<ImageCache.Key, Entry> eldestEntry = iterator.next();
+            final Entry eldest = eldestEntry.getValue();
+            accessed.remove(eldestEntry.getKey());
+            size -= eldest.size();
+            delete.add(eldest.path());
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        record Found(ImageCache.Key key, Entry entry, long lastAccess) { }
+        final List<Found> found = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for(Path path : stream) {
+                final String name = path.getFileName().toString();
+                if(name.endsWith(".tmp")) {
+                    // Left behind by a crash while writing
+                    Files.deleteIfExists(path);
+                    continue;
+                }
+                if(!name.endsWith(EXTENSION)) continue;
+                final String[] parts = name.substring(0, name.length() - EXTENSION.length()).split("-", 3);
+                if(parts.length != 3) continue;
+                final ImageCache.Key key;
+                try {
+                    key = new ImageCache.Key(Integer.parseInt(parts[0]), AGHPBook.BookImageType.valueOf(parts[1].toUpperCase()));
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                found.add(new Found(key, new Entry(path, parts[2], Files.size(path)), Files.getLastModifiedTime(path).toMillis()));
+            }
+        }
+        // Oldest first, so the most recently used files end up at the end of the access order
+        found.sort(Comparator.comparingLong(Found::lastAccess));
+        final List<Path> delete = new ArrayList<>();
+        lock.lock();
+        try {
+            for(Found f : found) {
+                final Entry previous = entries.put(f.key(), f.entry());
+                if(previous != null) {
+                    size -= previous.size();
+                    delete.add(previous.path());
+                }
+                size += f.entry().size();
+            }
+            evict(delete);
+        } finally {
+            lock.unlock();
+        }
+        deleteAll(delete);
+    }
+
+    private static void write(final Path path, final AGHPBook book) throws IOException {
+        final byte[][] strings = {
+                encode(book.category()), encode(book.commitAuthor()), encode(book.commitHash()), encode(book.commitUrl()), encode(book.bookName())
+        };
+        int headerSize = 4 + 1 + 4 + 1 + 4;
+        for(byte[] string : strings) {
+            headerSize += 4 + (string == null ? 0 : string.length);
+        }
+        final ByteBuffer header = ByteBuffer.allocate(headerSize);
+        header.putInt(MAGIC).put(VERSION).putInt(book.searchId()).put((byte) book.type().ordinal());
+        for(byte[] string : strings) {
+            header.putInt(string == null ? -1 : string.length);
+            if(string != null) header.put(string);
+        }
+        final ByteBuffer body = book.image().asByteBuffer();
+        header.putInt(body.remaining());
+        header.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer[] buffers = { header, body };
+            while(header.hasRemaining() || body.hasRemaining()) {
+                channel.write(buffers);
+            }
+            channel.force(true);
+        }
+    }
+
+    private static AGHPBook read(final Path path) throws IOException {
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if(buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+            throw new IOException("Not a book cache file: " + path);
+        }
+        final int searchId = buffer.getInt();
+        final AGHPBook.BookImageType type = AGHPBook.BookImageType.values()[buffer.get()];
+        final String category = decode(buffer, path);
+        final String commitAuthor = decode(buffer, path);
+        final String commitHash = decode(buffer, path);
+        final String commitUrl = decode(buffer, path);
+        final String bookName = decode(buffer, path);
+        final int length = buffer.getInt();
+        if(length < 0 || length > buffer.remaining()) {
+            throw new IOException("Broken book cache file: " + path);
+        }
+        // The image stays in the mapped file and is not copied to the heap. The mapping outlives the deletion of the file.
+        return new AGHPBook(ImagePayload.of(buffer.slice().limit(length)), type, category, commitAuthor, commitHash, commitUrl, bookName, searchId);
+    }
+
+    private static byte[] encode(final String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String decode(final ByteBuffer buffer, final Path path) throws IOException {
+        final int length = buffer.getInt();
+        if(length < 0) return null;
+        if(length > buffer.remaining()) {
+            throw new IOException("Broken book cache file: " + path);
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String sanitize(final String commitHash) {
+        if(commitHash == null || commitHash.isEmpty()) return "unknown";
+        return commitHash.replaceAll("[^A-Za-z0-9]", "_");
+    }
+
+    private static void deleteAll(final List<Path> paths) {
+        for(Path path : paths) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {
+                // Will be retried, when the index is loaded the next time
+            }
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+package de.joshicodes.aghpb4j.cache;
+
+import de.joshicodes.aghpb4j.objects.AGHPBook;
+
+/**
+ * In-memory cache for books with image data, keyed by search id and image type. <br>
+ * The cache is bounded by the total size of the images in bytes and evicts the least recently used books first. <br>
+ * <b>NOTE:</b> Cached books are shared between all callers. Don't modify the returned image bytes.
+ */
+public class ImageCache {
+
+    public record Key(int searchId, AGHPBook.BookImageType type) { }
+
+    private final WeightedCache<Key, AGHPBook> cache;
+
+    /**
+     * Creates a new ImageCache.
+     * @param maxBytes The maximum total size of all cached images in bytes.
+     */
+    public ImageCache(final long maxBytes) {
+        this.cache = new WeightedCache<>(maxBytes, AGHPBook::imageSize);
+    }
+
+    /**
+     * Returns the cached book.
+     * @param searchId The search id of the book.
+     * @param type The image type of the book.
+     * @return The book, or null if it is not cached.
+     */
+    public AGHPBook get(final int searchId, final AGHPBook.BookImageType type) {
+        return cache.get(new Key(searchId, type));
+    }
+
+    /**
+     * Returns the cached book, if it has the given commit hash. A cached book with a different commit hash is outdated and removed.
+     * @param searchId The search id of the book.
+     * @param type The image type of the book.
+     * @param commitHash The commit hash the book must have. Can be null to accept any commit.
+     * @return The book, or null if it is not cached or has a different commit hash.
+     */
+    public AGHPBook get(final int searchId, final AGHPBook.BookImageType type, final String commitHash) {
+        if(commitHash == null) return get(searchId, type);
+        return cache.get(new Key(searchId, type), book -> commitHash.equals(book.commitHash()));
+    }
+
+    /**
+     * Adds a book to the cache. <br>
+     * Books without image data or without a valid search id are ignored.
+     * @param book The book.
+     */
+    public void put(final AGHPBook book) {
+        if(book == null || !book.hasImage() || book.type() == null || book.searchId() < 0) return;
+        cache.put(new Key(book.searchId(), book.type()), book);
+    }
+
+    /**
+     * Removes a book from the cache.
+     * @param searchId The search id of the book.
+     * @param type The image type of the book.
+     */
+    public void invalidate(final int searchId, final AGHPBook.BookImageType type) {
+        cache.remove(new Key(searchId, type));
+    }
+
+    /**
+     * Removes all books from the cache.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Returns the hit, miss and eviction statistics of this cache.
+     * @return The statistics.
+     */
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+
+}
@@ -0,0 +1,283 @@
+package de.joshicodes.aghpb4j.cache;
+
+import de.joshicodes.aghpb4j.AGHPB;
+import de.joshicodes.aghpb4j.objects.AGHPBook;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps a buffer of ready random books for every category and image type, so that random books can be served from memory. <br>
+ * Once the buffer of a category drops to the low watermark, it is refilled in the background up to the high watermark.
+ * The total size of all buffered images is capped. Every request in flight reserves the average size of a book, so no more books are requested than fit.
+ * A book, which doesn't fit anyway, is dropped and no new requests are started until a book was taken from a buffer. <br>
+ * The prefetcher is opt-in and not used by {@link AGHPB#retrieveRandomBook()}, random books are only served from the buffers by {@link #next(String, AGHPBook.BookImageType)} and {@link #poll(String, AGHPBook.BookImageType)}.
+ * <pre>{@code
+ * RandomBookPrefetcher prefetcher = new RandomBookPrefetcher(aghpb, 2, 10, 32 * 1024 * 1024);
+ * prefetcher.next("java", AGHPBook.BookImageType.PNG).thenAccept(book -> ...);
+ * }</pre>
+ */
+public class RandomBookPrefetcher implements AutoCloseable {
+
+    /**
+     * The time constant of the refill rate in seconds.
+     */
+    private static final double RATE_WINDOW = 60;
+
+    private record Key(String category, AGHPBook.BookImageType type) { }
+
+    /**
+     * Statistics of the prefetcher.
+     * @param hits The amount of books served from a buffer.
+     * @param misses The amount of books, which had to be retrieved, because the buffer was empty.
+     * @param refills The amount of books retrieved in the background.
+     * @param failures The amount of failed background requests.
+     * @param dropped The amount of books retrieved in the background, which were dropped, because the buffers were full.
+     * @param depth The amount of buffered books over all categories.
+     * @param bytes The size of all buffered images in bytes.
+     * @param refillRate The recent amount of books retrieved in the background per second.
+     */
+    public record PrefetchStats(long hits, long misses, long refills, long failures, long dropped, int depth, long bytes, double refillRate) { }
+
+    private class Buffer {
+
+        private final Key key;
+        private final ConcurrentLinkedQueue<AGHPBook> books = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger depth = new AtomicInteger();
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private Buffer(final Key key) {
+            this.key = key;
+        }
+
+        private AGHPBook poll() {
+            final AGHPBook book = books.poll();
+            if(book != null) {
+                depth.decrementAndGet();
+                bytes.addAndGet(-size(book));
+                full = false;
+            }
+            return book;
+        }
+
+        /**
+         * Starts as many requests, as are needed to reach the high watermark.
+         */
+        private void refill() {
+            while(!closed && !api.isClosed() && !full) {
+                final int pending = inFlight.get();
+                if(depth.get() + pending >= highWatermark) return;
+                final long estimate = averageSize.get();
+                // The size of a book is not known yet, so only one request is started
+                if(estimate == 0 && pending > 0) return;
+                final long used = bytes.get() + reserved.get();
+                // If nothing is buffered or in flight, a book is requested anyway, so the average can adapt
+                if(used > 0 && used + estimate > maxBytes) return;
+                if(!inFlight.compareAndSet(pending, pending + 1)) continue;
+                reserved.addAndGet(estimate);
+                fetch().whenComplete((book, error) -> {
+                    reserved.addAndGet(-estimate);
+                    inFlight.decrementAndGet();
+                    if(error != null) {
+                        // Don't hammer a failing API, the next call of next() will try again
+                        failures.increment();
+                        return;
+                    }
+                    refills.increment();
+                    recordRefill();
+                    if(closed) return;
+                    final long size = size(book);
+                    averageSize.getAndUpdate(average -> average == 0 ? Math.max(1, size) : Math.max(1, (average * 7 + size) / 8));
+                    // The book may be larger than the reserved average
+                    if(bytes.addAndGet(size) > maxBytes) {
+                        bytes.addAndGet(-size);
+                        dropped.increment();
+                        full = true;
+                        return;
+                    }
+                    books.add(book);
+                    depth.incrementAndGet();
+                    refill();
+                });
+            }
+        }
+
+        private CompletableFuture<AGHPBook> fetch() {
+            try {
+                return api.retrieveRandomBook(key.category(), key.type()).submit();
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+    }
+
+    private final AGHPB api;
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final long maxBytes;
+    private final Map<Key, Buffer> buffers = new ConcurrentHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+    /**
+     * The bytes reserved for the requests in flight.
+     */
+    private final AtomicLong reserved = new AtomicLong();
+    /**
+     * The moving average of the size of the retrieved books, or 0 if no book was retrieved yet.
+     */
+    private final AtomicLong averageSize = new AtomicLong();
+    /**
+     * Whether a book was dropped, because the buffers were full. Cleared, once a book was taken from a buffer.
+     */
+    private volatile boolean full = false;
+    private volatile boolean closed = false;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refills = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final ReentrantLock rateLock = new ReentrantLock();
+    private double refillRate = 0;
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * Creates a new RandomBookPrefetcher.
+     * @param api The AGHPB instance to retrieve the books with.
+     * @param lowWatermark The depth of a buffer, at which it is refilled.
+     * @param highWatermark The depth up to which a buffer is refilled.
+     * @param maxBytes The maximum size of all buffered images in bytes.
+     */
+    public RandomBookPrefetcher(final AGHPB api, final int lowWatermark, final int highWatermark, final long maxBytes) {
+        if(api == null) throw new IllegalArgumentException("AGHPB cannot be null.");
+        if(lowWatermark < 0 || highWatermark < 1 || lowWatermark >= highWatermark) throw new IllegalArgumentException("Watermarks must satisfy 0 <= low < high.");
+        if(maxBytes <= 0) throw new IllegalArgumentException("maxBytes must be greater than 0.");
+        this.api = api;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Fills the buffer for the category and image type in the background, before the first book is requested.
+     * @param category The category. Can be null for any category.
+     * @param type The image type.
+     */
+    public void prefetch(final String category, final AGHPBook.BookImageType type) {
+        buffer(category, type).refill();
+    }
+
+    /**
+     * Returns a random book of the category. <br>
+     * If a book is buffered, the returned future is already completed. Otherwise, the book is retrieved from the API.
+     * @param category The category. Can be null for any category.
+     * @param type The image type.
+     * @return A CompletableFuture for the book.
+     */
+    public CompletableFuture<AGHPBook> next(final String category, final AGHPBook.BookImageType type) {
+        final Buffer buffer = buffer(category, type);
+        final AGHPBook book = buffer.poll();
+        if(buffer.depth.get() <= lowWatermark) {
+            buffer.refill();
+        }
+        if(book != null) {
+            hits.increment();
+            return CompletableFuture.completedFuture(book);
+        }
+        misses.increment();
+        return buffer.fetch();
+    }
+
+    /**
+     * Returns a buffered random book of the category, without waiting for the API.
+     * @param category The category. Can be null for any category.
+     * @param type The image type.
+     * @return The book, or null if the buffer is empty.
+     */
+    public AGHPBook poll(final String category, final AGHPBook.BookImageType type) {
+        final Buffer buffer = buffer(category, type);
+        final AGHPBook book = buffer.poll();
+        if(buffer.depth.get() <= lowWatermark) {
+            buffer.refill();
+        }
+        if(book != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return book;
+    }
+
+    /**
+     * Returns the amount of buffered books of the category.
+     * @param category The category. Can be null for any category.
+     * @param type The image type.
+     * @return The depth of the buffer.
+     */
+    public int getDepth(final String category, final AGHPBook.BookImageType type) {
+        final Buffer buffer = buffers.get(new Key(category, type == null ? AGHPBook.BookImageType.PNG : type));
+        return buffer == null ? 0 : buffer.depth.get();
+    }
+
+    /**
+     * Returns the statistics of this prefetcher.
+     * @return The statistics.
+     */
+    public PrefetchStats getStats() {
+        int depth = 0;
+        for(Buffer buffer : buffers.values()) {
+            depth += buffer.depth.get();
+        }
+        final double rate;
+        rateLock.lock();
+        try {
+            rate = refillRate * Math.exp(-((System.nanoTime() - lastRefill) / 1e9) / RATE_WINDOW);
+        } finally {
+            rateLock.unlock();
+        }
+        return new PrefetchStats(hits.sum(), misses.sum(), refills.sum(), failures.sum(), dropped.sum(), depth, bytes.get(), rate);
+    }
+
+    /**
+     * Stops refilling and clears all buffers.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        buffers.values().forEach(buffer -> {
+            while(buffer.poll() != null) {
+                // Drain, so that the byte count stays correct
+            }
+        });
+    }
+
+    private Buffer buffer(final String category, final AGHPBook.BookImageType type) {
+        if(closed) throw new IllegalStateException("This RandomBookPrefetcher is closed.");
+        return buffers.computeIfAbsent(new Key(category, type == null ? AGHPBook.BookImageType.PNG : type), Buffer::new);
+    }
+
+    /**
+     * Updates the exponentially decaying refill rate.
+     */
+    private void recordRefill() {
+        rateLock.lock();
+        try {
+            final long now = System.nanoTime();
+            refillRate = refillRate * Math.exp(-((now - lastRefill) / 1e9) / RATE_WINDOW) + 1 / RATE_WINDOW;
+            lastRefill = now;
+        } finally {
+            rateLock.unlock();
+        }
+    }
+
+    private static long size(final AGHPBook book) {
+        return book.imageSize();
+    }
+
+}
@@ -0,0 +1,139 @@
+package de.joshicodes.aghpb4j.cache;
+
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * In-memory cache for the parsed results of JSON endpoints, like the categories, the info, the status and searches. <br>
+ * A result is reused without a request, as long as it is fresh. Its lifetime is taken from the <code>Cache-Control: max-age</code> header.
+ * If the API sends an <code>ETag</code> or <code>Last-Modified</code> header instead, stale results are revalidated with a conditional request
+ * and reused, if the API answers with <code>304 Not Modified</code>. If the API sends neither, the default TTL is used. <br>
+ * Responses with <code>Cache-Control: no-store</code> are never cached. <br>
+ * <b>NOTE:</b> Cached results are shared between all callers. Lists are stored as unmodifiable copies.
+ */
+public class ResponseCache {
+
+    /**
+     * A cached result.
+     * @param value The parsed result.
+     * @param etag The ETag of the response, or null.
+     * @param lastModified The Last-Modified date of the response, or null.
+     * @param expiresAt The time in epoch millis, until which the result can be used without revalidation.
+     */
+    public record Entry(Object value, String etag, String lastModified, long expiresAt) {
+
+        public boolean isFresh() {
+            return System.currentTimeMillis() < expiresAt;
+        }
+
+        public boolean hasValidators() {
+            return etag != null || lastModified != null;
+        }
+
+    }
+
+    private final WeightedCache<String, Entry> cache;
+    private final long defaultTtl;
+
+    /**
+     * Creates a new ResponseCache.
+     * @param defaultTtl The time, for which results are reused, if the API sends neither a max-age nor a validator.
+     * @param maxEntries The maximum amount of cached results.
+     */
+    public ResponseCache(final Duration defaultTtl, final int maxEntries) {
+        if(defaultTtl == null || defaultTtl.isNegative()) throw new IllegalArgumentException("defaultTtl cannot be null or negative.");
+        if(maxEntries < 1) throw new IllegalArgumentException("maxEntries must be at least 1.");
+        this.defaultTtl = defaultTtl.toMillis();
+        this.cache = new WeightedCache<>(maxEntries, entry -> 1);
+    }
+
+    /**
+     * Returns the cached result for the key, even if it is stale.
+     * @param key The key, usually the url of the request.
+     * @return The entry, or null if nothing is cached.
+     */
+    public Entry get(final String key) {
+        return cache.get(key);
+    }
+
+    /**
+     * Caches the result of a response, if its headers allow it.
+     * @param key The key, usually the url of the request.
+     * @param headers The headers of the response.
+     * @param value The parsed result.
+     * @return The value, which was cached. Lists are replaced by unmodifiable copies.
+     */
+    public Object put(final String key, final HttpHeaders headers, final Object value) {
+        final Object shared = value instanceof List<?> list ? List.copyOf(list) : value;
+        final String cacheControl = String.join(",", headers.allValues("Cache-Control")).toLowerCase(Locale.ROOT);
+        if(value == null || cacheControl.contains("no-store")) {
+            cache.remove(key);
+            return shared;
+        }
+        final String etag = headers.firstValue("ETag").orElse(null);
+        final String lastModified = headers.firstValue("Last-Modified").orElse(null);
+        cache.put(key, new Entry(shared, etag, lastModified, expiresAt(cacheControl, etag != null || lastModified != null)));
+        return shared;
+    }
+
+    /**
+     * Marks a cached result as fresh again, after the API answered a conditional request with <code>304 Not Modified</code>.
+     * @param key The key, usually the url of the request.
+     * @param entry The entry, which was revalidated.
+     * @param headers The headers of the 304 response.
+     */
+    public void refresh(final String key, final Entry entry, final HttpHeaders headers) {
+        final String cacheControl = String.join(",", headers.allValues("Cache-Control")).toLowerCase(Locale.ROOT);
+        final String etag = headers.firstValue("ETag").orElse(entry.etag());
+        final String lastModified = headers.firstValue("Last-Modified").orElse(entry.lastModified());
+        cache.put(key, new Entry(entry.value(), etag, lastModified, expiresAt(cacheControl, etag != null || lastModified != null)));
+    }
+
+    /**
+     * Removes a cached result.
+     * @param key The key, usually the url of the request.
+     */
+    public void invalidate(final String key) {
+        cache.remove(key);
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Returns the hit, miss and eviction statistics of this cache. The weight is the amount of cached results.
+     * @return The statistics.
+     */
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+
+    private long expiresAt(final String cacheControl, final boolean validators) {
+        final long now = System.currentTimeMillis();
+        if(cacheControl.contains("no-cache")) return now;
+        final long maxAge = maxAge(cacheControl);
+        if(maxAge >= 0) return now + maxAge * 1000;
+        // With validators, a conditional request is cheap, so the result is revalidated every time
+        return validators ? now : now + defaultTtl;
+    }
+
+    private static long maxAge(final String cacheControl) {
+        for(String directive : cacheControl.split(",")) {
+            final String trimmed = directive.trim();
+            if(!trimmed.startsWith("max-age=")) continue;
+            try {
+                return Long.parseLong(trimmed.substring("max-age=".length()).replace("\"", "").trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,167 @@
+package de.joshicodes.aghpb4j.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * A thread-safe least recently used cache, which is bounded by the total weight of its values instead of the amount of entries. <br>
+ * If adding a value exceeds the maximum weight, the least recently used entries are evicted until the cache fits again.
+ * Values, which are heavier than the maximum weight on their own, are not cached at all.
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+public class WeightedCache<K, V> {
+
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock lock = new ReentrantLock();
+    private long weight = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a new WeightedCache.
+     * @param maxWeight The maximum total weight of all values.
+     * @param weigher The function, which calculates the weight of a value.
+     */
+    public WeightedCache(final long maxWeight, final ToLongFunction<V> weigher) {
+        if(maxWeight <= 0) throw new IllegalArgumentException("maxWeight must be greater than 0.");
+        if(weigher == null) throw new IllegalArgumentException("Weigher cannot be null.");
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Returns the value for the key and marks it as recently used.
+     * @param key The key.
+     * @return The value, or null if the key is not cached.
+     */
+    public V get(final K key) {
+        final V value;
+        lock.lock();
+        try {
+            value = entries.get(key);
+        } finally {
+            lock.unlock();
+        }
+        if(value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value for the key, if it is still valid, and marks it as recently used. <br>
+     * A value, which is not valid anymore, is removed and counted as a miss.
+     * @param key The key.
+     * @param valid Checks, whether the cached value is still valid.
+     * @return The value, or null if the key is not cached or its value is not valid.
+     */
+    public V get(final K key, final Predicate<V> valid) {
+        V value;
+        lock.lock();
+        try {
+            value = entries.get(key);
+            if(value != null && !valid.test(value)) {
+                entries.remove(key);
+                weight -= weigher.applyAsLong(value);
+                value = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if(value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Adds a value to the cache. Replaces the previous value of the key.
+     * @param key The key.
+     * @param value The value.
+     * @return true, if the value was cached. false, if it is heavier than the maximum weight.
+     */
+    public boolean put(final K key, final V value) {
+        final long valueWeight = weigher.applyAsLong(value);
+        lock.lock();
+        try {
+            final V previous = entries.remove(key);
+            if(previous != null) {
+                weight -= weigher.applyAsLong(previous);
+            }
+            if(valueWeight > maxWeight) {
+                return false;
+            }
+            entries.put(key, value);
+            weight += valueWeight;
+            final Iterator<Map.Entry<K, V>> iterator = entries.entrySet().iterator();
+            while(weight > maxWeight && iterator.hasNext()) {
+                final Map.Entry<K, V> eldest = iterator.next();
+                weight -= weigher.applyAsLong(eldest.getValue());
+                iterator.remove();
+                evictions.increment();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the value of the key.
+     * @param key The key.
+     * @return The removed value, or null if the key was not cached.
+     */
+    public V remove(final K key) {
+        lock.lock();
+        try {
+            final V removed = entries.remove(key);
+            if(removed != null) {
+                weight -= weigher.applyAsLong(removed);
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all values.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            weight = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the statistics of this cache.
+     * @return The current statistics.
+     */
+    public CacheStats getStats() {
+        lock.lock();
+        try {
+            return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), entries.size(), weight, maxWeight);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
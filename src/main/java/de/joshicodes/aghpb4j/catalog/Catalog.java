@@ -0,0 +1,270 @@
+package de.joshicodes.aghpb4j.catalog;
+
+import de.joshicodes.aghpb4j.AGHPB;
+import de.joshicodes.aghpb4j.objects.AGHPBook;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A local copy of the metadata of all books of the AGHPB API. <br>
+ * After the first {@link #sync()}, books can be searched with {@link #search(String, String, int)} without sending a request,
+ * even if the API is unreachable. {@link #refresh()} only downloads the catalog again, if the book count of the API changed.
+ * <pre>{@code
+ * Catalog catalog = new Catalog(aghpb);
+ * catalog.sync().join();
+ * List<AGHPBook> books = catalog.search("frieren", null, 10);
+ * }</pre>
+ * To avoid waiting for the API on startup, the catalog can be saved with {@link #saveSnapshot(Path)}
+ * and restored with {@link #restore(AGHPB, Path)}.
+ */
+public class Catalog {
+
+    private final AGHPB api;
+    private final CatalogIndex index = new CatalogIndex();
+    private volatile List<String> categories = List.of();
+    private volatile AGHPB.ApiInfo info;
+    private final AtomicReference<CompletableFuture<Integer>> running = new AtomicReference<>();
+    private volatile CompletableFuture<Integer> revalidation;
+
+    public Catalog(final AGHPB api) {
+        if(api == null) throw new IllegalArgumentException("AGHPB cannot be null.");
+        this.api = api;
+    }
+
+    /**
+     * Downloads the metadata of all books and updates the index. <br>
+     * All books are retrieved with a single search without category. Only if it returns fewer books than the API has, every category is searched as well.
+     * The {@link de.joshicodes.aghpb4j.cache.ResponseCache} is skipped, so a sync always sees the current state of the API.
+     * Only changed books are updated in the index.
+     * If a sync is already running, its future is returned.
+     * @return A CompletableFuture for the amount of books, which were added, changed or removed.
+     */
+    public CompletableFuture<Integer> sync() {
+        final CompletableFuture<Integer> created = new CompletableFuture<>();
+        final CompletableFuture<Integer> existing = running.compareAndExchange(null, created);
+        if(existing != null) {
+            return existing;
+        }
+        try {
+            api.retrieveInfo().useCache(false).submit()
+                    .thenCombine(api.retrieveAllCategories().useCache(false).submit(), (info, categories) -> {
+                        // A limit of the book count makes sure, that every book is returned
+                        final int limit = Math.max(1, info.bookCount());
+                        return api.retrieveSearch("", null, limit).useCache(false).submit().thenCompose(all -> {
+                            if(all.size() >= info.bookCount()) {
+                                return CompletableFuture.completedFuture(all);
+                            }
+                            // The search was truncated, the categories are searched on their own
+                            final List<CompletableFuture<List<AGHPBook>>> searches = new ArrayList<>();
+                            for(String category : categories) {
+                                searches.add(api.retrieveSearch("", category, limit).useCache(false).submit());
+                            }
+                            return CompletableFuture.allOf(searches.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+                                final List<AGHPBook> merged = new ArrayList<>(all);
+                                for(CompletableFuture<List<AGHPBook>> search : searches) {
+                                    merged.addAll(search.join());
+                                }
+                                return merged;
+                            });
+                        }).thenApply(found -> {
+                            final Map<Integer, AGHPBook> books = new LinkedHashMap<>();
+                            for(AGHPBook book : found) {
+                                books.put(book.searchId(), book);
+                            }
+                            final int changes = index.replaceAll(books.values());
+                            this.categories = List.copyOf(categories);
+                            this.info = info;
+                            return changes;
+                        });
+                    })
+                    .thenCompose(future -> future)
+                    .whenComplete((changes, error) -> {
+                        running.set(null);
+                        if(error != null) {
+                            created.completeExceptionally(error);
+                        } else {
+                            created.complete(changes);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            // E.g. the AGHPB instance was closed, don't block all following syncs
+            running.set(null);
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+
+    /**
+     * Creates a catalog from a snapshot file and revalidates it against the API in the background. <br>
+     * The catalog can be searched as soon as this method returns. If the file does not exist or is broken, the catalog starts empty.
+     * Once the background sync found changes, the snapshot file is updated.
+     * <pre>{@code
+     * Catalog catalog = Catalog.restore(aghpb, Path.of("catalog.bin"));
+     * catalog.search("frieren"); // Served from the snapshot
+     * }</pre>
+     * @param api The AGHPB instance.
+     * @param snapshot The snapshot file.
+     * @return The restored catalog.
+     * @see #getRevalidation()
+     */
+    public static Catalog restore(final AGHPB api, final Path snapshot) {
+        final Catalog catalog = new Catalog(api);
+        boolean restored = false;
+        if(Files.isRegularFile(snapshot)) {
+            try {
+                catalog.loadSnapshot(snapshot);
+                restored = true;
+            } catch (IOException ignored) {
+                // A broken snapshot is replaced by the sync below
+            }
+        }
+        final boolean write = !restored;
+        catalog.revalidation = catalog.sync().thenApply(changes -> {
+            if(write || changes > 0) {
+                catalog.saveSnapshot(snapshot);
+            }
+            return changes;
+        });
+        return catalog;
+    }
+
+    /**
+     * Writes the info, the categories and the metadata of all books to a file. An existing file is replaced.
+     * @param path The file.
+     * @throws UncheckedIOException If the file could not be written.
+     * @see CatalogSnapshot
+     */
+    public void saveSnapshot(final Path path) {
+        try {
+            toSnapshot().write(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write catalog snapshot to " + path, e);
+        }
+    }
+
+    /**
+     * Replaces the content of this catalog with a snapshot file. No request is sent.
+     * @param path The file.
+     * @throws IOException If the file could not be read or is not a valid snapshot.
+     */
+    public void loadSnapshot(final Path path) throws IOException {
+        applySnapshot(CatalogSnapshot.read(path));
+    }
+
+    /**
+     * Returns a snapshot of the current content of this catalog.
+     * @return The snapshot.
+     */
+    public CatalogSnapshot toSnapshot() {
+        return new CatalogSnapshot(info, categories, index.getAll());
+    }
+
+    /**
+     * Replaces the content of this catalog with a snapshot. No request is sent.
+     * @param snapshot The snapshot.
+     */
+    public void applySnapshot(final CatalogSnapshot snapshot) {
+        if(snapshot == null) throw new IllegalArgumentException("Snapshot cannot be null.");
+        index.replaceAll(snapshot.books());
+        this.categories = List.copyOf(snapshot.categories());
+        this.info = snapshot.info();
+    }
+
+    /**
+     * Returns the background sync, which was started by {@link #restore(AGHPB, Path)}.
+     * @return A CompletableFuture for the amount of changed books, or null if this catalog was not restored.
+     */
+    public CompletableFuture<Integer> getRevalidation() {
+        return revalidation;
+    }
+
+    /**
+     * Checks the book count of the API and syncs the catalog, if it changed. <br>
+     * <b>NOTE:</b> Books, which were replaced without changing the book count, are only detected by {@link #sync()}.
+     * @return A CompletableFuture for the amount of books, which were added, changed or removed.
+     */
+    public CompletableFuture<Integer> refresh() {
+        final AGHPB.ApiInfo known = this.info;
+        if(known == null) {
+            return sync();
+        }
+        return api.retrieveInfo().useCache(false).submit().thenCompose(current -> {
+            if(current.bookCount() == known.bookCount() && current.bookCount() == index.size()) {
+                this.info = current;
+                return CompletableFuture.completedFuture(0);
+            }
+            return sync();
+        });
+    }
+
+    /**
+     * Searches the local catalog for books, whose name contains the query, ignoring case. No request is sent.
+     * @param query The query.
+     * @return The matching books, ordered by search id. The AGHPBooks will not contain any image data.
+     */
+    public List<AGHPBook> search(final String query) {
+        return index.search(query, null, -1);
+    }
+
+    /**
+     * Searches the local catalog for books, whose name contains the query, ignoring case. No request is sent.
+     * @param query The query.
+     * @param category The category to search in, ignoring case. Can be null.
+     * @param limit The maximum amount of books. Values below 1 mean no limit.
+     * @return The matching books, ordered by search id. The AGHPBooks will not contain any image data.
+     */
+    public List<AGHPBook> search(final String query, final String category, final int limit) {
+        return index.search(query, category, limit);
+    }
+
+    /**
+     * Returns the book with the search id from the local catalog.
+     * @param searchId The search id.
+     * @return The book, or null if it is not known.
+     */
+    public AGHPBook getBook(final int searchId) {
+        return index.get(searchId);
+    }
+
+    /**
+     * Returns all books of the local catalog.
+     * @return The books, ordered by search id.
+     */
+    public List<AGHPBook> getBooks() {
+        return index.getAll();
+    }
+
+    /**
+     * Returns the categories, which were retrieved by the last sync.
+     * @return The categories.
+     */
+    public List<String> getCategories() {
+        return categories;
+    }
+
+    /**
+     * Returns the info, which was retrieved by the last sync or refresh.
+     * @return The info, or null if the catalog was never synced.
+     */
+    public AGHPB.ApiInfo getInfo() {
+        return info;
+    }
+
+    public CatalogIndex getIndex() {
+        return index;
+    }
+
+    public AGHPB getApi() {
+        return api;
+    }
+
+}
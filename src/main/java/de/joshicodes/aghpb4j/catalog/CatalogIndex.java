@@ -0,0 +1,218 @@
+package de.joshicodes.aghpb4j.catalog;
+
+import de.joshicodes.aghpb4j.objects.AGHPBook;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of book metadata, which allows searching by name and category without the API. <br>
+ * Names are indexed by their trigrams (every sequence of three characters), so a search only has to check the books,
+ * which contain all trigrams of the query. Search ids are stored in BitSets, which keeps the index compact. <br>
+ * The index is thread-safe. Searches can run concurrently, updates are exclusive.
+ */
+public class CatalogIndex {
+
+    private static final int GRAM = 3;
+
+    private final Map<Integer, AGHPBook> books = new HashMap<>();
+    private final Map<Integer, String> normalizedNames = new HashMap<>();
+    private final Map<String, BitSet> grams = new HashMap<>();
+    private final Map<String, BitSet> categories = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Adds a book to the index, or replaces the book with the same search id. <br>
+     * Image data is not stored.
+     * @param book The book.
+     */
+    public void put(final AGHPBook book) {
+        if(book == null || book.searchId() < 0) return;
+        lock.writeLock().lock();
+        try {
+            putUnlocked(book);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a book from the index.
+     * @param searchId The search id of the book.
+     */
+    public void remove(final int searchId) {
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(searchId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Updates the index to contain exactly the given books. <br>
+     * Only books, which were added, changed or removed, are touched.
+     * @param all All books of the catalog.
+     * @return The amount of books, which were added, changed or removed.
+     */
+    public int replaceAll(final Collection<AGHPBook> all) {
+        lock.writeLock().lock();
+        try {
+            int changes = 0;
+            final Set<Integer> seen = new HashSet<>();
+            for(AGHPBook book : all) {
+                if(book == null || book.searchId() < 0) continue;
+                seen.add(book.searchId());
+                if(!book.withoutImage().equals(books.get(book.searchId()))) {
+                    putUnlocked(book);
+                    changes++;
+                }
+            }
+            for(Integer searchId : new ArrayList<>(books.keySet())) {
+                if(!seen.contains(searchId)) {
+                    removeUnlocked(searchId);
+                    changes++;
+                }
+            }
+            return changes;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the book with the search id.
+     * @param searchId The search id.
+     * @return The book, or null if it is not indexed.
+     */
+    public AGHPBook get(final int searchId) {
+        lock.readLock().lock();
+        try {
+            return books.get(searchId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns all indexed books, ordered by search id.
+     * @return A new list of all books.
+     */
+    public List<AGHPBook> getAll() {
+        lock.readLock().lock();
+        try {
+            final List<AGHPBook> all = new ArrayList<>(books.values());
+            all.sort((a, b) -> Integer.compare(a.searchId(), b.searchId()));
+            return all;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the amount of indexed books.
+     * @return The amount of books.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return books.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Searches for books, whose name contains the query, ignoring case.
+     * @param query The query. An empty query matches every book.
+     * @param category The category to search in, ignoring case. Can be null.
+     * @param limit The maximum amount of books. Values below 1 mean no limit.
+     * @return The matching books, ordered by search id.
+     */
+    public List<AGHPBook> search(final String query, final String category, final int limit) {
+        final String normalized = normalize(query == null ? "" : query);
+        lock.readLock().lock();
+        try {
+            BitSet candidates = null;
+            if(category != null) {
+                final BitSet inCategory = categories.get(normalize(category));
+                if(inCategory == null) return new ArrayList<>();
+                candidates = (BitSet) inCategory.clone();
+            }
+            if(normalized.length() >= GRAM) {
+                for(int i = 0; i + GRAM <= normalized.length(); i++) {
+                    final BitSet withGram = grams.get(normalized.substring(i, i + GRAM));
+                    if(withGram == null) return new ArrayList<>();
+                    if(candidates == null) {
+                        candidates = (BitSet) withGram.clone();
+                    } else {
+                        candidates.and(withGram);
+                    }
+                    if(candidates.isEmpty()) return new ArrayList<>();
+                }
+            }
+            final List<AGHPBook> result = new ArrayList<>();
+            if(candidates == null) {
+                // Short query without category, check every book
+                candidates = new BitSet();
+                for(Integer searchId : books.keySet()) {
+                    candidates.set(searchId);
+                }
+            }
+            for(int searchId = candidates.nextSetBit(0); searchId >= 0; searchId = candidates.nextSetBit(searchId + 1)) {
+                // The trigrams may appear in a different order, so the name is always checked
+                if(!normalizedNames.get(searchId).contains(normalized)) continue;
+                result.add(books.get(searchId));
+                if(limit > 0 && result.size() >= limit) break;
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void putUnlocked(final AGHPBook book) {
+        removeUnlocked(book.searchId());
+        final AGHPBook stripped = book.withoutImage();
+        final String name = normalize(stripped.bookName() == null ? "" : stripped.bookName());
+        books.put(stripped.searchId(), stripped);
+        normalizedNames.put(stripped.searchId(), name);
+        for(int i = 0; i + GRAM <= name.length(); i++) {
+            grams.computeIfAbsent(name.substring(i, i + GRAM), g -> new BitSet()).set(stripped.searchId());
+        }
+        if(stripped.category() != null) {
+            categories.computeIfAbsent(normalize(stripped.category()), c -> new BitSet()).set(stripped.searchId());
+        }
+    }
+
+    private void removeUnlocked(final int searchId) {
+        final AGHPBook removed = books.remove(searchId);
+        if(removed == null) return;
+        final String name = normalizedNames.remove(searchId);
+        for(int i = 0; i + GRAM <= name.length(); i++) {
+            final String gram = name.substring(i, i + GRAM);
+            final BitSet withGram = grams.get(gram);
+            withGram.clear(searchId);
+            if(withGram.isEmpty()) grams.remove(gram);
+        }
+        if(removed.category() != null) {
+            final String category = normalize(removed.category());
+            final BitSet inCategory = categories.get(category);
+            inCategory.clear(searchId);
+            if(inCategory.isEmpty()) categories.remove(category);
+        }
+    }
+
+    private static String normalize(final String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+}
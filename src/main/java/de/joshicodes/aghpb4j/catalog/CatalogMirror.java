@@ -0,0 +1,333 @@
+package de.joshicodes.aghpb4j.catalog;
+
+import de.joshicodes.aghpb4j.AGHPB;
+import de.joshicodes.aghpb4j.objects.AGHPBook;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Mirrors the images of all books into a local directory. <br>
+ * Images are stored as <code>{category}/{searchId}-{name}.{png|jpg}</code>. A manifest in the directory records the commit hash and the size
+ * of every downloaded image, so a re-run only downloads new and changed books and deletes books, which were removed from the API. <br>
+ * Every image is downloaded to a temporary file and moved into place once it is complete. The manifest is appended after every download,
+ * so an interrupted mirror resumes where it stopped.
+ * <pre>{@code
+ * CatalogMirror.Result result = new CatalogMirror(aghpb, Path.of("mirror")).setConcurrency(16).run().join();
+ * }</pre>
+ */
+public class CatalogMirror {
+
+    public static final int DEFAULT_CONCURRENCY = 8;
+    public static final String MANIFEST = "manifest.tsv";
+    private static final String MANIFEST_HEADER = "# AGHPB4J mirror manifest v1";
+
+    /**
+     * The outcome of a mirror run.
+     * @param downloaded The amount of downloaded images.
+     * @param skipped The amount of images, which were already up to date.
+     * @param deleted The amount of images, which were deleted, because the book was removed or moved.
+     * @param failures The errors of the books, which could not be downloaded, by search id.
+     */
+    public record Result(int downloaded, int skipped, int deleted, Map<Integer, Throwable> failures) {
+
+        public boolean isComplete() {
+            return failures.isEmpty();
+        }
+
+    }
+
+    private record Entry(int searchId, String commitHash, String path, long size) { }
+
+    private final AGHPB api;
+    private final Path directory;
+    private Catalog catalog;
+    private AGHPBook.BookImageType type = AGHPBook.BookImageType.PNG;
+    private int concurrency = DEFAULT_CONCURRENCY;
+
+    public CatalogMirror(final AGHPB api, final Path directory) {
+        if(api == null) throw new IllegalArgumentException("AGHPB cannot be null.");
+        if(directory == null) throw new IllegalArgumentException("Directory cannot be null.");
+        this.api = api;
+        this.directory = directory;
+    }
+
+    /**
+     * Sets the catalog, which provides the metadata of the books. It is synced at the start of every run. <br>
+     * If none is set, a new catalog is created.
+     * @param catalog The catalog.
+     * @return This CatalogMirror.
+     */
+    public CatalogMirror useCatalog(final Catalog catalog) {
+        this.catalog = catalog;
+        return this;
+    }
+
+    /**
+     * Sets the image type of the mirrored images. Defaults to PNG.
+     * @param type The image type.
+     * @return This CatalogMirror.
+     */
+    public CatalogMirror useType(final AGHPBook.BookImageType type) {
+        if(type == null) throw new IllegalArgumentException("Type cannot be null.");
+        this.type = type;
+        return this;
+    }
+
+    /**
+     * Sets the maximum amount of images, which are downloaded at the same time. Defaults to {@value #DEFAULT_CONCURRENCY}.
+     * @param concurrency The maximum amount of downloads in flight.
+     * @return This CatalogMirror.
+     */
+    public CatalogMirror setConcurrency(final int concurrency) {
+        if(concurrency < 1) throw new IllegalArgumentException("Concurrency must be at least 1.");
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * Syncs the metadata and downloads all new and changed images. <br>
+     * A failed book does not abort the run. It is listed in the result and downloaded again by the next run.
+     * @return A CompletableFuture for the result.
+     */
+    public CompletableFuture<Result> run() {
+        if(catalog == null) catalog = new Catalog(api);
+        final Catalog source = catalog;
+        return source.sync().thenCompose(changes -> {
+            try {
+                return new Run(source.getBooks()).start();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * A single execution of the mirror.
+     */
+    private class Run {
+
+        private final List<AGHPBook> pending = new ArrayList<>();
+        private final Map<Integer, Entry> manifest;
+        private final Map<Integer, Throwable> failures = new ConcurrentHashMap<>();
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger completed = new AtomicInteger();
+        private final AtomicInteger downloaded = new AtomicInteger();
+        private final CompletableFuture<Result> result = new CompletableFuture<>();
+        private final ReentrantLock journalLock = new ReentrantLock();
+        private final BufferedWriter journal;
+        private int skipped = 0;
+        private int deleted = 0;
+
+        private Run(final List<AGHPBook> books) throws IOException {
+            Files.createDirectories(directory);
+            this.manifest = new ConcurrentHashMap<>(readManifest());
+            final Map<Integer, AGHPBook> current = new HashMap<>();
+            for(AGHPBook book : books) {
+                current.put(book.searchId(), book);
+                final Entry entry = manifest.get(book.searchId());
+                final String path = pathOf(book);
+                if(entry != null && entry.commitHash().equals(String.valueOf(book.commitHash())) && entry.path().equals(path) && isIntact(entry)) {
+                    skipped++;
+                    continue;
+                }
+                if(entry != null && !entry.path().equals(path)) {
+                    deleted += delete(entry) ? 1 : 0;
+                    manifest.remove(book.searchId());
+                }
+                pending.add(book);
+            }
+            for(Entry entry : new ArrayList<>(manifest.values())) {
+                if(!current.containsKey(entry.searchId())) {
+                    deleted += delete(entry) ? 1 : 0;
+                    manifest.remove(entry.searchId());
+                }
+            }
+            this.journal = Files.newBufferedWriter(directory.resolve(MANIFEST), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+
+        private CompletableFuture<Result> start() {
+            if(pending.isEmpty()) {
+                finish();
+                return result;
+            }
+            for(int i = 0; i < Math.min(concurrency, pending.size()); i++) {
+                launch();
+            }
+            return result;
+        }
+
+        /**
+         * Starts the next download. Downloads, which complete immediately, are handled in a loop instead of recursively.
+         */
+        private void launch() {
+            while(!result.isDone()) {
+                final int index = next.getAndIncrement();
+                if(index >= pending.size()) return;
+                final AGHPBook book = pending.get(index);
+                final Path target = directory.resolve(pathOf(book));
+                CompletableFuture<AGHPBook> future;
+                try {
+                    future = api.retrieveBook(book.searchId(), type).streamTo(target).submit();
+                } catch (RuntimeException e) {
+                    future = CompletableFuture.failedFuture(e);
+                }
+                if(!future.isDone()) {
+                    future.whenComplete((downloadedBook, error) -> {
+                        complete(book, target, error);
+                        launch();
+                    });
+                    return;
+                }
+                Throwable error = null;
+                try {
+                    future.join();
+                } catch (RuntimeException e) {
+                    error = e;
+                }
+                complete(book, target, error);
+            }
+        }
+
+        private void complete(final AGHPBook book, final Path target, final Throwable error) {
+            if(error != null) {
+                failures.put(book.searchId(), error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            } else {
+                try {
+                    final Entry entry = new Entry(book.searchId(), String.valueOf(book.commitHash()), pathOf(book), Files.size(target));
+                    manifest.put(book.searchId(), entry);
+                    append(entry);
+                    downloaded.incrementAndGet();
+                } catch (IOException e) {
+                    failures.put(book.searchId(), e);
+                }
+            }
+            if(completed.incrementAndGet() == pending.size()) {
+                finish();
+            }
+        }
+
+        /**
+         * Writes the compacted manifest, which replaces the journal of this run.
+         */
+        private void finish() {
+            try {
+                journalLock.lock();
+                try {
+                    journal.close();
+                } finally {
+                    journalLock.unlock();
+                }
+                writeManifest(manifest);
+                result.complete(new Result(downloaded.get(), skipped, deleted, Map.copyOf(failures)));
+            } catch (IOException e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void append(final Entry entry) throws IOException {
+            journalLock.lock();
+            try {
+                journal.write(format(entry));
+                journal.newLine();
+                // Flushed after every entry, so a crash loses at most the downloads in flight
+                journal.flush();
+            } finally {
+                journalLock.unlock();
+            }
+        }
+
+    }
+
+    /**
+     * Returns the path of the image of the book, relative to the directory.
+     */
+    private String pathOf(final AGHPBook book) {
+        final String extension = type == AGHPBook.BookImageType.JPEG ? ".jpg" : ".png";
+        return sanitize(book.category() != null ? book.category() : "unknown") + "/" + book.searchId() + "-" + sanitize(book.bookName() != null ? book.bookName() : "") + extension;
+    }
+
+    private boolean isIntact(final Entry entry) {
+        try {
+            return Files.size(directory.resolve(entry.path())) == entry.size();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private boolean delete(final Entry entry) {
+        try {
+            return Files.deleteIfExists(directory.resolve(entry.path()));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the manifest. Later lines replace earlier lines of the same book, a broken last line of a crashed run is ignored.
+     */
+    private Map<Integer, Entry> readManifest() throws IOException {
+        final Path path = directory.resolve(MANIFEST);
+        final Map<Integer, Entry> entries = new HashMap<>();
+        if(!Files.isRegularFile(path)) return entries;
+        for(String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            if(line.isEmpty() || line.startsWith("#")) continue;
+            final String[] parts = line.split("\t");
+            if(parts.length != 4) continue;
+            try {
+                final Entry entry = new Entry(Integer.parseInt(parts[0]), parts[1], parts[2], Long.parseLong(parts[3]));
+                entries.put(entry.searchId(), entry);
+            } catch (NumberFormatException ignored) {
+                // Broken line
+            }
+        }
+        return entries;
+    }
+
+    private void writeManifest(final Map<Integer, Entry> entries) throws IOException {
+        final Path temp = Files.createTempFile(directory, "manifest-", ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write(MANIFEST_HEADER);
+                writer.newLine();
+                for(Entry entry : entries.values().stream().sorted((a, b) -> Integer.compare(a.searchId(), b.searchId())).toList()) {
+                    writer.write(format(entry));
+                    writer.newLine();
+                }
+            }
+            Files.move(temp, directory.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static String format(final Entry entry) {
+        return entry.searchId() + "\t" + entry.commitHash() + "\t" + entry.path() + "\t" + entry.size();
+    }
+
+    private static String sanitize(final String value) {
+        String sanitized = value.replaceAll("[^\\p{L}\\p{N} ._+#-]", "_").replace("..", "_").trim();
+        if(sanitized.length() > 100) sanitized = sanitized.substring(0, 100);
+        return sanitized.isEmpty() ? "_" : sanitized;
+    }
+
+}
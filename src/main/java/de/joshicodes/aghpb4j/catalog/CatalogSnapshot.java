@@ -0,0 +1,200 @@
+package de.joshicodes.aghpb4j.catalog;
+
+import de.joshicodes.aghpb4j.AGHPB;
+import de.joshicodes.aghpb4j.objects.AGHPBook;
+import de.joshicodes.aghpb4j.objects.ImagePayload;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A persisted copy of a {@link Catalog}, which contains the {@link AGHPB.ApiInfo}, the categories and the metadata of all books. <br>
+ * The snapshot is stored in a compact binary format. Every distinct string (e.g. a category or an author) is only stored once,
+ * books refer to it by its index. Image data is never stored. <br>
+ * Snapshots are written to a temporary file first and then atomically moved into place.
+ *
+ * @param info The info of the API at the time of the snapshot. Can be null.
+ * @param categories The categories.
+ * @param books The books without image data.
+ * @see Catalog#saveSnapshot(Path)
+ * @see Catalog#restore(AGHPB, Path)
+ */
+public record CatalogSnapshot(AGHPB.ApiInfo info, List<String> categories, List<AGHPBook> books) {
+
+    private static final int MAGIC = 0x41474843; // AGHC
+    private static final byte VERSION = 1;
+
+    /**
+     * Writes this snapshot to a file. An existing file is replaced.
+     * @param path The file.
+     * @throws IOException If the file could not be written.
+     */
+    public void write(final Path path) throws IOException {
+        final Path parent = path.toAbsolutePath().getParent();
+        if(parent != null) Files.createDirectories(parent);
+        final Path temp = Files.createTempFile(parent, "catalog-", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                write(out);
+            }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Writes this snapshot to a stream. The stream is not closed.
+     * @param out The stream.
+     * @throws IOException If the stream could not be written.
+     */
+    public void write(final OutputStream out) throws IOException {
+        final List<String> strings = new ArrayList<>();
+        final Map<String, Integer> ids = new HashMap<>();
+        for(String category : categories) {
+            intern(category, strings, ids);
+        }
+        for(AGHPBook book : books) {
+            intern(book.category(), strings, ids);
+            intern(book.commitAuthor(), strings, ids);
+            intern(book.commitHash(), strings, ids);
+            intern(book.commitUrl(), strings, ids);
+            intern(book.bookName(), strings, ids);
+        }
+        final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeBoolean(info != null);
+        if(info != null) {
+            data.writeInt(info.bookCount());
+            writeString(data, info.apiVersion());
+        }
+        data.writeInt(strings.size());
+        for(String string : strings) {
+            writeString(data, string);
+        }
+        data.writeInt(categories.size());
+        for(String category : categories) {
+            data.writeInt(ids.get(category));
+        }
+        data.writeInt(books.size());
+        for(AGHPBook book : books) {
+            data.writeInt(book.searchId());
+            data.writeInt(id(book.category(), ids));
+            data.writeInt(id(book.commitAuthor(), ids));
+            data.writeInt(id(book.commitHash(), ids));
+            data.writeInt(id(book.commitUrl(), ids));
+            data.writeInt(id(book.bookName(), ids));
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a snapshot from a file.
+     * @param path The file.
+     * @return The snapshot.
+     * @throws IOException If the file could not be read or is not a valid snapshot.
+     */
+    public static CatalogSnapshot read(final Path path) throws IOException {
+        return read(ByteBuffer.wrap(Files.readAllBytes(path)));
+    }
+
+    /**
+     * Reads a snapshot from a buffer.
+     * @param buffer The buffer, positioned at the start of the snapshot.
+     * @return The snapshot.
+     * @throws IOException If the buffer does not contain a valid snapshot.
+     */
+    public static CatalogSnapshot read(final ByteBuffer buffer) throws IOException {
+        try {
+            if(buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+                throw new IOException("Not a catalog snapshot.");
+            }
+            AGHPB.ApiInfo info = null;
+            if(buffer.get() != 0) {
+                final int bookCount = buffer.getInt();
+                info = new AGHPB.ApiInfo(bookCount, readString(buffer));
+            }
+            final String[] strings = new String[count(buffer, 4)];
+            for(int i = 0; i < strings.length; i++) {
+                strings[i] = readString(buffer);
+            }
+            final int categoryCount = count(buffer, 4);
+            final List<String> categories = new ArrayList<>(categoryCount);
+            for(int i = 0; i < categoryCount; i++) {
+                categories.add(string(strings, buffer.getInt()));
+            }
+            final int bookCount = count(buffer, 6 * 4);
+            final List<AGHPBook> books = new ArrayList<>(bookCount);
+            for(int i = 0; i < bookCount; i++) {
+                final int searchId = buffer.getInt();
+                final String category = string(strings, buffer.getInt());
+                final String commitAuthor = string(strings, buffer.getInt());
+                final String commitHash = string(strings, buffer.getInt());
+                final String commitUrl = string(strings, buffer.getInt());
+                final String bookName = string(strings, buffer.getInt());
+                books.add(new AGHPBook((ImagePayload) null, null, category, commitAuthor, commitHash, commitUrl, bookName, searchId));
+            }
+            return new CatalogSnapshot(info, categories, books);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Broken catalog snapshot.", e);
+        }
+    }
+
+    /**
+     * Reads the amount of entries, which follow, and checks that the buffer can hold them, so a broken file can't allocate huge arrays.
+     */
+    private static int count(final ByteBuffer buffer, final int minEntrySize) throws IOException {
+        final int count = buffer.getInt();
+        if(count < 0 || (long) count * minEntrySize > buffer.remaining()) {
+            throw new IOException("Broken catalog snapshot.");
+        }
+        return count;
+    }
+
+    private static void intern(final String value, final List<String> strings, final Map<String, Integer> ids) {
+        if(value == null || ids.containsKey(value)) return;
+        ids.put(value, strings.size());
+        strings.add(value);
+    }
+
+    private static int id(final String value, final Map<String, Integer> ids) {
+        return value == null ? -1 : ids.get(value);
+    }
+
+    private static String string(final String[] strings, final int id) {
+        return id < 0 ? null : strings[id];
+    }
+
+    private static void writeString(final DataOutputStream data, final String value) throws IOException {
+        if(value == null) {
+            data.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static String readString(final ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if(length < 0) return null;
+        if(length > buffer.remaining()) throw new BufferUnderflowException();
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
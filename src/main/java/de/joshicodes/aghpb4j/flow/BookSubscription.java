@@ -0,0 +1,141 @@
+package de.joshicodes.aghpb4j.flow;
+
+import de.joshicodes.aghpb4j.objects.AGHPBook;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Subscription, which retrieves books only as fast as the subscriber requests them. <br>
+ * Every requested book, which is not already buffered or in flight, starts a request, but never more than <code>maxInFlight</code> at once.
+ * So the amount of buffered books is bounded by the demand of the subscriber. <br>
+ * All signals to the subscriber are serialized by a drain loop, which may run on any thread, that completes a request or calls {@link #request(long)}. <br>
+ * Cancelling the subscription aborts the requests in flight.
+ */
+abstract class BookSubscription implements Flow.Subscription {
+
+    private final Flow.Subscriber<? super AGHPBook> subscriber;
+    private final int maxInFlight;
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final ConcurrentLinkedQueue<AGHPBook> ready = new ConcurrentLinkedQueue<>();
+    private final Set<CompletableFuture<AGHPBook>> running = ConcurrentHashMap.newKeySet();
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+    private volatile boolean cancelled = false;
+
+    BookSubscription(final Flow.Subscriber<? super AGHPBook> subscriber, final int maxInFlight) {
+        this.subscriber = subscriber;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Starts retrieving the next book.
+     * @return A future for the book, or null if no book can be started right now.
+     */
+    protected abstract CompletableFuture<AGHPBook> next();
+
+    /**
+     * Returns whether all books were started, so the subscription completes once they were delivered.
+     * @return true, if there are no more books.
+     */
+    protected abstract boolean isExhausted();
+
+    @Override
+    public void request(final long n) {
+        if(n <= 0) {
+            fail(new IllegalArgumentException("Requested " + n + " books, but the amount must be positive."));
+            return;
+        }
+        demand.getAndAccumulate(n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add);
+        drain();
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+        ready.clear();
+        running.forEach(future -> future.cancel(true));
+    }
+
+    /**
+     * Terminates the subscription with an error.
+     * @param throwable The error.
+     */
+    protected void fail(final Throwable throwable) {
+        error.compareAndSet(null, unwrap(throwable));
+        drain();
+    }
+
+    protected boolean isCancelled() {
+        return cancelled;
+    }
+
+    protected void drain() {
+        if(wip.getAndIncrement() != 0) return;
+        int missed = 1;
+        do {
+            if(!cancelled) {
+                emit();
+            }
+            missed = wip.addAndGet(-missed);
+        } while(missed != 0);
+    }
+
+    private void emit() {
+        final Throwable failure = error.get();
+        if(failure != null) {
+            cancel();
+            subscriber.onError(failure);
+            return;
+        }
+        AGHPBook book;
+        while(demand.get() > 0 && (book = ready.poll()) != null) {
+            subscriber.onNext(book);
+            demand.getAndUpdate(current -> current == Long.MAX_VALUE ? current : current - 1);
+            if(cancelled) return;
+        }
+        if(ready.isEmpty() && inFlight.get() == 0 && isExhausted()) {
+            cancelled = true;
+            subscriber.onComplete();
+            return;
+        }
+        while(!cancelled && inFlight.get() < maxInFlight && demand.get() > ready.size() + inFlight.get() && !isExhausted()) {
+            final CompletableFuture<AGHPBook> future;
+            try {
+                future = next();
+            } catch (RuntimeException e) {
+                // Delivered by the next round of the drain loop
+                fail(e);
+                return;
+            }
+            if(future == null) break;
+            inFlight.incrementAndGet();
+            running.add(future);
+            // The subscription may have been cancelled from another thread after the check above
+            if(cancelled) future.cancel(true);
+            future.whenComplete((result, throwable) -> {
+                running.remove(future);
+                if(throwable != null) {
+                    error.compareAndSet(null, unwrap(throwable));
+                } else if(!cancelled) {
+                    ready.add(result);
+                }
+                inFlight.decrementAndGet();
+                drain();
+            });
+        }
+    }
+
+    private static Throwable unwrap(final Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+    }
+
+}
@@ -0,0 +1,62 @@
+package de.joshicodes.aghpb4j.flow;
+
+import de.joshicodes.aghpb4j.AGHPB;
+import de.joshicodes.aghpb4j.objects.AGHPBook;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * An endless stream of random books. <br>
+ * Books are only retrieved, when the subscriber requested them. At most <code>maxInFlight</code> requests are sent at once,
+ * so a slow subscriber never causes books to pile up. Every subscriber gets its own books.
+ * <pre>{@code
+ * aghpb.randomBooks("java", AGHPBook.BookImageType.PNG).subscribe(subscriber);
+ * }</pre>
+ *
+ * @see AGHPB#randomBooks(String, AGHPBook.BookImageType)
+ */
+public class RandomBookPublisher implements Flow.Publisher<AGHPBook> {
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    private final AGHPB api;
+    private final String category;
+    private final AGHPBook.BookImageType type;
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+    public RandomBookPublisher(final AGHPB api, final String category, final AGHPBook.BookImageType type) {
+        if(api == null) throw new IllegalArgumentException("AGHPB cannot be null.");
+        this.api = api;
+        this.category = category;
+        this.type = type;
+    }
+
+    /**
+     * Sets the maximum amount of requests, which are in flight at once for one subscriber. Defaults to 4.
+     * @param maxInFlight The maximum amount of requests. Must be at least 1.
+     * @return This RandomBookPublisher.
+     */
+    public RandomBookPublisher setMaxInFlight(final int maxInFlight) {
+        if(maxInFlight < 1) throw new IllegalArgumentException("maxInFlight must be at least 1.");
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super AGHPBook> subscriber) {
+        if(subscriber == null) throw new NullPointerException("Subscriber cannot be null.");
+        subscriber.onSubscribe(new BookSubscription(subscriber, maxInFlight) {
+            @Override
+            protected CompletableFuture<AGHPBook> next() {
+                return api.retrieveRandomBook(category, type).submit();
+            }
+
+            @Override
+            protected boolean isExhausted() {
+                return false;
+            }
+        });
+    }
+
+}
@@ -0,0 +1,93 @@
+package de.joshicodes.aghpb4j.flow;
+
+import de.joshicodes.aghpb4j.AGHPB;
+import de.joshicodes.aghpb4j.action.SearchAction;
+import de.joshicodes.aghpb4j.objects.AGHPBook;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Publishes the results of a search. <br>
+ * The search is sent, when the subscriber requests the first book. If an image type is set, the image of every result is retrieved as well,
+ * but only for as many books as the subscriber requested and at most <code>maxInFlight</code> at once.
+ * Books with images are emitted in the order their images arrive, not in the order of the search. <br>
+ * Every subscriber sends its own search.
+ *
+ * @see SearchAction#publish()
+ * @see SearchAction#publish(AGHPBook.BookImageType)
+ */
+public class SearchPublisher implements Flow.Publisher<AGHPBook> {
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    private final AGHPB api;
+    private final SearchAction search;
+    private final AGHPBook.BookImageType imageType;
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+    /**
+     * Creates a new SearchPublisher.
+     * @param api The AGHPB instance, which retrieves the images.
+     * @param search The search.
+     * @param imageType The type of the images to retrieve, or null to emit the books without images.
+     */
+    public SearchPublisher(final AGHPB api, final SearchAction search, final AGHPBook.BookImageType imageType) {
+        if(api == null) throw new IllegalArgumentException("AGHPB cannot be null.");
+        if(search == null) throw new IllegalArgumentException("Search cannot be null.");
+        this.api = api;
+        this.search = search;
+        this.imageType = imageType;
+    }
+
+    /**
+     * Sets the maximum amount of image requests, which are in flight at once for one subscriber. Defaults to 4.
+     * @param maxInFlight The maximum amount of requests. Must be at least 1.
+     * @return This SearchPublisher.
+     */
+    public SearchPublisher setMaxInFlight(final int maxInFlight) {
+        if(maxInFlight < 1) throw new IllegalArgumentException("maxInFlight must be at least 1.");
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super AGHPBook> subscriber) {
+        if(subscriber == null) throw new NullPointerException("Subscriber cannot be null.");
+        subscriber.onSubscribe(new BookSubscription(subscriber, maxInFlight) {
+
+            private final AtomicBoolean searching = new AtomicBoolean();
+            private volatile List<AGHPBook> results;
+            private int index = 0;
+
+            @Override
+            protected CompletableFuture<AGHPBook> next() {
+                final List<AGHPBook> books = results;
+                if(books == null) {
+                    if(searching.compareAndSet(false, true)) {
+                        search.submit().whenComplete((list, error) -> {
+                            if(error != null) {
+                                fail(error);
+                                return;
+                            }
+                            results = list;
+                            drain();
+                        });
+                    }
+                    return null;
+                }
+                final AGHPBook book = books.get(index++);
+                return imageType == null ? CompletableFuture.completedFuture(book) : api.retrieveBook(book, imageType).submit();
+            }
+
+            @Override
+            protected boolean isExhausted() {
+                final List<AGHPBook> books = results;
+                return books != null && index >= books.size();
+            }
+        });
+    }
+
+}
@@ -0,0 +1,49 @@
+package de.joshicodes.aghpb4j.image;
+
+import de.joshicodes.aghpb4j.objects.AGHPBook;
+import de.joshicodes.aghpb4j.objects.ImagePayload;
+
+/**
+ * A scaled down copy of the image of a book.
+ * @param book The book, without its original image.
+ * @param size The size the thumbnail was requested with. Neither side of the image is larger.
+ * @param format The format of the thumbnail.
+ * @param width The width of the thumbnail in pixels.
+ * @param height The height of the thumbnail in pixels.
+ * @param image The encoded thumbnail.
+ *
+ * @see ThumbnailPipeline
+ */
+public record Thumbnail(AGHPBook book, int size, Format format, int width, int height, ImagePayload image) {
+
+    public enum Format {
+        /**
+         * Lossless, keeps transparency.
+         */
+        PNG("image/png"),
+        /**
+         * Smaller, transparent areas become white. The quality is set with {@link ThumbnailPipeline#setJpegQuality(float)}.
+         */
+        JPEG("image/jpeg");
+
+        private final String contentType;
+
+        Format(final String contentType) {
+            this.contentType = contentType;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+    }
+
+    /**
+     * Returns the size of the encoded thumbnail.
+     * @return The size in bytes.
+     */
+    public long imageSize() {
+        return image.size();
+    }
+
+}
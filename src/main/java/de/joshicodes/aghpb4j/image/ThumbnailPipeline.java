@@ -0,0 +1,323 @@
+package de.joshicodes.aghpb4j.image;
+
+import de.joshicodes.aghpb4j.AGHPB;
+import de.joshicodes.aghpb4j.cache.CacheStats;
+import de.joshicodes.aghpb4j.cache.WeightedCache;
+import de.joshicodes.aghpb4j.objects.AGHPBook;
+import de.joshicodes.aghpb4j.objects.ImagePayload;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates scaled down thumbnails of book images and caches them, so previews don't need the full image. <br>
+ * Thumbnails are rendered with {@link ImageIO} on a bounded pool of worker threads and cached by search id, commit hash, size and format.
+ * A new commit of a book therefore never returns an outdated thumbnail. The cache is bounded by the size of the encoded thumbnails. <br>
+ * If the book passed to {@link #thumbnail(AGHPBook, int, Thumbnail.Format)} has metadata, e.g. from a search or a
+ * {@link de.joshicodes.aghpb4j.catalog.Catalog}, a cached thumbnail is returned without downloading the image. <br>
+ * <pre>{@code
+ * try (ThumbnailPipeline thumbnails = new ThumbnailPipeline(aghpb, 16 * 1024 * 1024)) {
+ *     Thumbnail thumbnail = thumbnails.thumbnail(368, 256, Thumbnail.Format.JPEG).join();
+ * }
+ * }</pre>
+ */
+public class ThumbnailPipeline implements AutoCloseable {
+
+    /**
+     * The amount of thumbnails, which may wait for a worker, per worker.
+     */
+    private static final int QUEUE_PER_WORKER = 64;
+
+    private record Key(int searchId, String commitHash, int size, Thumbnail.Format format) { }
+
+    private final AGHPB api;
+    private final WeightedCache<Key, Thumbnail> cache;
+    private final Map<Key, CompletableFuture<Thumbnail>> rendering = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor workers;
+    private volatile float jpegQuality = 0.8f;
+
+    /**
+     * Creates a new ThumbnailPipeline with one worker per processor.
+     * @param api The AGHPB instance to retrieve the images with.
+     * @param maxBytes The maximum total size of all cached thumbnails in bytes.
+     */
+    public ThumbnailPipeline(final AGHPB api, final long maxBytes) {
+        this(api, Runtime.getRuntime().availableProcessors(), maxBytes);
+    }
+
+    /**
+     * Creates a new ThumbnailPipeline.
+     * @param api The AGHPB instance to retrieve the images with.
+     * @param workers The amount of threads, which render thumbnails.
+     * @param maxBytes The maximum total size of all cached thumbnails in bytes.
+     */
+    public ThumbnailPipeline(final AGHPB api, final int workers, final long maxBytes) {
+        if(api == null) throw new IllegalArgumentException("AGHPB cannot be null.");
+        if(workers < 1) throw new IllegalArgumentException("workers must be at least 1.");
+        if(maxBytes <= 0) throw new IllegalArgumentException("maxBytes must be greater than 0.");
+        this.api = api;
+        this.cache = new WeightedCache<>(maxBytes, Thumbnail::imageSize);
+        final AtomicInteger count = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workers, workers, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(workers * QUEUE_PER_WORKER), runnable -> {
+            final Thread thread = new Thread(runnable, "AGHPB-Thumbnail-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Sets the quality of JPEG thumbnails. Defaults to 0.8. <br>
+     * Thumbnails, which are already cached, are not affected.
+     * @param jpegQuality The quality between 0 (smallest) and 1 (best).
+     * @return This ThumbnailPipeline.
+     */
+    public ThumbnailPipeline setJpegQuality(final float jpegQuality) {
+        if(jpegQuality < 0 || jpegQuality > 1) throw new IllegalArgumentException("jpegQuality must be between 0 and 1.");
+        this.jpegQuality = jpegQuality;
+        return this;
+    }
+
+    /**
+     * Returns the thumbnail of a book. <br>
+     * If the thumbnail of this commit of the book is cached, it is returned without a request.
+     * Otherwise, the image of the book is retrieved, unless the book already contains it, and scaled down.
+     * @param book The book. Can be without an image, e.g. a search result.
+     * @param size The maximum width and height of the thumbnail in pixels. Smaller images are not scaled up.
+     * @param format The format of the thumbnail.
+     * @return A CompletableFuture for the thumbnail.
+     */
+    public CompletableFuture<Thumbnail> thumbnail(final AGHPBook book, final int size, final Thumbnail.Format format) {
+        if(book == null) throw new IllegalArgumentException("Book cannot be null.");
+        validate(size, format);
+        final Key key = key(book, size, format);
+        if(key == null) {
+            return book.hasImage() ? submit(book, size, format) : download(book, size, format);
+        }
+        final Thumbnail cached = cache.get(key);
+        if(cached != null) return CompletableFuture.completedFuture(cached);
+        // Requests for the same thumbnail, which arrive while it is created, share the download and the rendering
+        final CompletableFuture<Thumbnail> created = new CompletableFuture<>();
+        final CompletableFuture<Thumbnail> existing = rendering.putIfAbsent(key, created);
+        if(existing != null) return existing.copy();
+        final CompletableFuture<Thumbnail> thumbnail;
+        try {
+            thumbnail = book.hasImage() ? submit(book, size, format) : download(book, size, format);
+        } catch (RuntimeException e) {
+            rendering.remove(key, created);
+            created.completeExceptionally(e);
+            throw e;
+        }
+        thumbnail.whenComplete((result, error) -> {
+            // The retrieved image may belong to a newer commit, so the key is taken from the result
+            final Key resultKey = result != null ? key(result.book(), size, format) : null;
+            if(resultKey != null) cache.put(resultKey, result);
+            rendering.remove(key, created);
+            if(error != null) {
+                created.completeExceptionally(error);
+            } else {
+                created.complete(result);
+            }
+        });
+        return created.copy();
+    }
+
+    /**
+     * Returns the thumbnail of a book. <br>
+     * The commit hash of the book is not known before the image was retrieved, so the image is always retrieved,
+     * unless it is in the {@link de.joshicodes.aghpb4j.cache.ImageCache} of the AGHPB instance.
+     * Use {@link #thumbnail(AGHPBook, int, Thumbnail.Format)}, if the metadata of the book is known.
+     * @param searchId The search id of the book.
+     * @param size The maximum width and height of the thumbnail in pixels.
+     * @param format The format of the thumbnail.
+     * @return A CompletableFuture for the thumbnail.
+     */
+    public CompletableFuture<Thumbnail> thumbnail(final int searchId, final int size, final Thumbnail.Format format) {
+        validate(size, format);
+        return api.retrieveBook(searchId, AGHPBook.BookImageType.PNG).submit()
+                .thenCompose(book -> thumbnail(book, size, format));
+    }
+
+    /**
+     * Retrieves a random book and returns its thumbnail.
+     * @param category The category. Can be null for any category.
+     * @param size The maximum width and height of the thumbnail in pixels.
+     * @param format The format of the thumbnail.
+     * @return A CompletableFuture for the thumbnail.
+     */
+    public CompletableFuture<Thumbnail> randomThumbnail(final String category, final int size, final Thumbnail.Format format) {
+        validate(size, format);
+        return api.retrieveRandomBook(category, AGHPBook.BookImageType.PNG).submit()
+                .thenCompose(book -> thumbnail(book, size, format));
+    }
+
+    /**
+     * Returns the hit, miss and eviction statistics of the cache. The weight is the total size of all thumbnails in bytes.
+     * @return The statistics.
+     */
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+
+    /**
+     * Removes all thumbnails from the cache.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Stops the workers. Thumbnails, which are still waiting for a worker, fail.
+     */
+    @Override
+    public void close() {
+        workers.shutdown();
+        final List<Runnable> waiting = new ArrayList<>();
+        workers.getQueue().drainTo(waiting);
+        for(Runnable task : waiting) {
+            ((RenderTask) task).result.completeExceptionally(new IllegalStateException("This ThumbnailPipeline is closed."));
+        }
+    }
+
+    private CompletableFuture<Thumbnail> download(final AGHPBook book, final int size, final Thumbnail.Format format) {
+        return api.retrieveBook(book, AGHPBook.BookImageType.PNG).submit()
+                .thenCompose(withImage -> submit(withImage, size, format));
+    }
+
+    private CompletableFuture<Thumbnail> submit(final AGHPBook book, final int size, final Thumbnail.Format format) {
+        final RenderTask task = new RenderTask(book, size, format);
+        try {
+            workers.execute(task);
+        } catch (RejectedExecutionException e) {
+            // All workers are busy and the queue is full, or the pipeline was closed
+            return CompletableFuture.failedFuture(e);
+        }
+        return task.result;
+    }
+
+    private class RenderTask implements Runnable {
+
+        private final AGHPBook book;
+        private final int size;
+        private final Thumbnail.Format format;
+        private final CompletableFuture<Thumbnail> result = new CompletableFuture<>();
+
+        private RenderTask(final AGHPBook book, final int size, final Thumbnail.Format format) {
+            this.book = book;
+            this.size = size;
+            this.format = format;
+        }
+
+        @Override
+        public void run() {
+            try {
+                result.complete(create(book, size, format));
+            } catch (IOException e) {
+                result.completeExceptionally(new UncheckedIOException("Could not create a thumbnail of book " + book.searchId(), e));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+    }
+
+    private Thumbnail create(final AGHPBook book, final int size, final Thumbnail.Format format) throws IOException {
+        final BufferedImage source;
+        try (InputStream inputStream = book.image().openStream()) {
+            source = ImageIO.read(inputStream);
+        }
+        if(source == null) throw new IOException("The image of book " + book.searchId() + " has an unsupported format.");
+        final double scale = Math.min(1, Math.min((double) size / source.getWidth(), (double) size / source.getHeight()));
+        final int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        final int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        final BufferedImage scaled = scale(source, width, height, format == Thumbnail.Format.JPEG);
+        final byte[] bytes = format == Thumbnail.Format.JPEG ? encodeJpeg(scaled) : encodePng(scaled);
+        return new Thumbnail(book.withoutImage(), size, format, width, height, ImagePayload.of(bytes));
+    }
+
+    /**
+     * Scales the image down in steps of at most half the size. A single bilinear step would skip most pixels of a large image and look grainy.
+     */
+    private static BufferedImage scale(final BufferedImage source, final int width, final int height, final boolean opaque) {
+        BufferedImage current = source;
+        int currentWidth = source.getWidth();
+        int currentHeight = source.getHeight();
+        do {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = Math.max(height, currentHeight / 2);
+            final BufferedImage next = new BufferedImage(currentWidth, currentHeight, opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+            final Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                if(opaque) {
+                    // JPEG has no transparency
+                    graphics.setColor(Color.WHITE);
+                    graphics.fillRect(0, 0, currentWidth, currentHeight);
+                }
+                graphics.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while(currentWidth != width || currentHeight != height);
+        return current;
+    }
+
+    private static byte[] encodePng(final BufferedImage image) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if(!ImageIO.write(image, "png", out)) throw new IOException("No PNG writer available.");
+        return out.toByteArray();
+    }
+
+    private byte[] encodeJpeg(final BufferedImage image) throws IOException {
+        final Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if(!writers.hasNext()) throw new IOException("No JPEG writer available.");
+        final ImageWriter writer = writers.next();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream outputStream = ImageIO.createImageOutputStream(out)) {
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.setOutput(outputStream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static Key key(final AGHPBook book, final int size, final Thumbnail.Format format) {
+        // Without a search id or commit hash, the book can't be told apart from other books or commits
+        if(book.searchId() < 0 || book.commitHash() == null) return null;
+        return new Key(book.searchId(), book.commitHash(), size, format);
+    }
+
+    private static void validate(final int size, final Thumbnail.Format format) {
+        if(size < 1) throw new IllegalArgumentException("size must be at least 1.");
+        if(format == null) throw new IllegalArgumentException("Format cannot be null.");
+    }
+
+}
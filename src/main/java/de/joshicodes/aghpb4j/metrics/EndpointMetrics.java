@@ -0,0 +1,23 @@
+package de.joshicodes.aghpb4j.metrics;
+
+import java.time.Duration;
+
+/**
+ * A snapshot of the metrics of one endpoint.
+ * @param endpoint The endpoint, e.g. <code>/get/id/{id}</code>.
+ * @param requests The amount of finished requests.
+ * @param failures The amount of requests, which failed with an error or a status code of 400 or higher.
+ * @param retries The amount of retries.
+ * @param failovers The amount of attempts, which were sent to another endpoint of the pool right away.
+ * @param rateLimitWaits The amount of attempts, which had to wait for the rate limit.
+ * @param rateLimitWaitTime The total time spent waiting for the rate limit.
+ * @param bytesReceived The total size of all received bodies in bytes.
+ * @param p50 The median duration of a request, including retries and waits.
+ * @param p99 The 99th percentile of the duration of a request.
+ * @param max The longest duration of a request.
+ * @param timeToHeadersP50 The median time from sending an attempt until its headers arrived.
+ * @param transferP50 The median time from the arrival of the headers until the end of the body.
+ * @param throughput The amount of finished requests per second since the recorder was created or reset.
+ */
+public record EndpointMetrics(String endpoint, long requests, long failures, long retries, long failovers, long rateLimitWaits, Duration rateLimitWaitTime,
+                              long bytesReceived, Duration p50, Duration p99, Duration max, Duration timeToHeadersP50, Duration transferP50, double throughput) { }
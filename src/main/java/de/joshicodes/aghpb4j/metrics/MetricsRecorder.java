@@ -0,0 +1,128 @@
+package de.joshicodes.aghpb4j.metrics;
+
+import de.joshicodes.aghpb4j.request.RequestListener;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lightweight in-memory metrics, which are recorded per endpoint. <br>
+ * Recording is lock-free: all counters are {@link LongAdder}s and durations go into {@link LatencyHistogram}s.
+ * Use {@link #getMetrics()} to export the percentiles and the throughput, e.g. to a log or a monitoring system.
+ * <pre>{@code
+ * MetricsRecorder metrics = new MetricsRecorder();
+ * AGHPB aghpb = AGHPB.builder().addRequestListener(metrics).build();
+ * // ...
+ * metrics.getMetrics().values().forEach(System.out::println);
+ * }</pre>
+ */
+public class MetricsRecorder implements RequestListener {
+
+    private static class Endpoint {
+
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder failovers = new LongAdder();
+        private final LongAdder rateLimitWaits = new LongAdder();
+        private final LongAdder rateLimitWaitNanos = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+        private final LatencyHistogram duration = new LatencyHistogram();
+        private final LatencyHistogram timeToHeaders = new LatencyHistogram();
+        private final LatencyHistogram transfer = new LatencyHistogram();
+
+    }
+
+    private volatile Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private volatile long since = System.nanoTime();
+
+    @Override
+    public void onRateLimitWait(final Request request, final long waitNanos) {
+        final Endpoint endpoint = endpoint(request);
+        endpoint.rateLimitWaits.increment();
+        endpoint.rateLimitWaitNanos.add(waitNanos);
+    }
+
+    @Override
+    public void onResponseHeaders(final Request request, final int attempt, final int statusCode, final long timeToHeadersNanos) {
+        endpoint(request).timeToHeaders.record(timeToHeadersNanos);
+    }
+
+    @Override
+    public void onBytesReceived(final Request request, final long bytes) {
+        endpoint(request).bytesReceived.add(bytes);
+    }
+
+    @Override
+    public void onBodyComplete(final Request request, final int attempt, final long transferNanos) {
+        endpoint(request).transfer.record(transferNanos);
+    }
+
+    @Override
+    public void onRetry(final Request request, final int retry, final int statusCode, final Throwable error, final long delayMillis) {
+        endpoint(request).retries.increment();
+    }
+
+    @Override
+    public void onFailover(final Request request, final String endpoint, final int statusCode, final Throwable error) {
+        endpoint(request).failovers.increment();
+    }
+
+    @Override
+    public void onComplete(final Request request, final int statusCode, final long durationNanos, final Throwable error) {
+        final Endpoint endpoint = endpoint(request);
+        endpoint.requests.increment();
+        if(error != null || statusCode >= 400) endpoint.failures.increment();
+        endpoint.duration.record(durationNanos);
+    }
+
+    /**
+     * Returns the metrics of the endpoint.
+     * @param endpoint The endpoint, e.g. <code>/random</code>.
+     * @return The metrics, or null if no request to the endpoint was recorded.
+     */
+    public EndpointMetrics getMetrics(final String endpoint) {
+        final Endpoint recorded = endpoints.get(endpoint);
+        return recorded == null ? null : snapshot(endpoint, recorded, seconds());
+    }
+
+    /**
+     * Returns the metrics of all endpoints.
+     * @return The metrics by endpoint, sorted by the endpoint.
+     */
+    public Map<String, EndpointMetrics> getMetrics() {
+        final double seconds = seconds();
+        final Map<String, EndpointMetrics> metrics = new TreeMap<>();
+        endpoints.forEach((name, endpoint) -> metrics.put(name, snapshot(name, endpoint, seconds)));
+        return metrics;
+    }
+
+    /**
+     * Discards all recorded metrics and restarts the throughput measurement.
+     */
+    public void reset() {
+        endpoints = new ConcurrentHashMap<>();
+        since = System.nanoTime();
+    }
+
+    private Endpoint endpoint(final Request request) {
+        return endpoints.computeIfAbsent(request.endpoint(), name -> new Endpoint());
+    }
+
+    private double seconds() {
+        return Math.max(1e-9, (System.nanoTime() - since) / 1e9);
+    }
+
+    private static EndpointMetrics snapshot(final String name, final Endpoint endpoint, final double seconds) {
+        final long requests = endpoint.requests.sum();
+        return new EndpointMetrics(name, requests, endpoint.failures.sum(), endpoint.retries.sum(), endpoint.failovers.sum(),
+                endpoint.rateLimitWaits.sum(), Duration.ofNanos(endpoint.rateLimitWaitNanos.sum()), endpoint.bytesReceived.sum(),
+                Duration.ofNanos(endpoint.duration.getPercentile(50)), Duration.ofNanos(endpoint.duration.getPercentile(99)),
+                Duration.ofNanos(endpoint.duration.getMax()), Duration.ofNanos(endpoint.timeToHeaders.getPercentile(50)),
+                Duration.ofNanos(endpoint.transfer.getPercentile(50)), requests / seconds);
+    }
+
+}
@@ -1,9 +1,17 @@
 package de.joshicodes.aghpb4j.objects;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 
+/**
+ * A book of the AGHPB API. <br>
+ * The image data is held by an {@link ImagePayload}, which can live on the heap, outside of the heap or be loaded lazily.
+ * Books without image data, e.g. search results, have no payload.
+ */
 public record AGHPBook(
-        byte[] imageBytes,
+        ImagePayload image,
         BookImageType type,
         String category,
         String commitAuthor,
@@ -14,6 +22,21 @@ public record AGHPBook(
         int searchId
 ) {
 
+    /**
+     * Creates a book, which holds the image data in a byte array.
+     * @param imageBytes The image data. Can be null, if the book has no image data.
+     * @param type The image type.
+     * @param category The category.
+     * @param commitAuthor The author of the commit, which added the book.
+     * @param commitHash The hash of the commit, which added the book.
+     * @param commitUrl The url of the commit, which added the book.
+     * @param bookName The name of the book.
+     * @param searchId The search id of the book.
+     */
+    public AGHPBook(byte[] imageBytes, BookImageType type, String category, String commitAuthor, String commitHash, String commitUrl, String bookName, int searchId) {
+        this(imageBytes != null ? ImagePayload.of(imageBytes) : null, type, category, commitAuthor, commitHash, commitUrl, bookName, searchId);
+    }
+
     /**
      * Enum for the image type of the book.
      */
@@ -21,6 +44,62 @@ public record AGHPBook(
         PNG, JPEG
     }
 
+    /**
+     * Returns the image data as a byte array. <br>
+     * If the image is not held in a byte array, a copy is created on the heap for every call.
+     * Prefer {@link #image()} or {@link #writeImageTo(WritableByteChannel)} for large images.
+     * @return The image data, or null if this book has no image data.
+     */
+    public byte[] imageBytes() {
+        return image != null ? image.toByteArray() : null;
+    }
+
+    /**
+     * Returns whether this book has image data.
+     * @return true, if the book has image data.
+     */
+    public boolean hasImage() {
+        return image != null;
+    }
+
+    /**
+     * Returns the size of the image data.
+     * @return The size in bytes, or 0 if this book has no image data.
+     */
+    public long imageSize() {
+        return image != null ? image.size() : 0;
+    }
+
+    /**
+     * Returns a copy of this book with other image data.
+     * @param image The image data. Can be null.
+     * @return The copy.
+     */
+    public AGHPBook withImage(final ImagePayload image) {
+        return new AGHPBook(image, type, category, commitAuthor, commitHash, commitUrl, bookName, searchId);
+    }
+
+    /**
+     * Returns a copy of this book without image data, e.g. to keep only the metadata in memory.
+     * @return The copy.
+     */
+    public AGHPBook withoutImage() {
+        if(image == null && type == null) return this;
+        return new AGHPBook((ImagePayload) null, null, category, commitAuthor, commitHash, commitUrl, bookName, searchId);
+    }
+
+    /**
+     * Writes the image to the channel, without copying it into a byte array first.
+     * @param channel The channel. It is not closed.
+     * @return The amount of bytes written.
+     * @throws IOException If an I/O error occurs.
+     * @throws IllegalStateException If this book has no image data.
+     */
+    public long writeImageTo(final WritableByteChannel channel) throws IOException {
+        if(image == null) throw new IllegalStateException("This book has no image data.");
+        return image.writeTo(channel);
+    }
+
     /**
      * Saves the image to a file.
      * @param file The file to save the image to.
@@ -32,13 +111,23 @@ public record AGHPBook(
             if(file.getParentFile() != null) file.getParentFile().mkdirs();
         }
         if(!file.getName().endsWith(".png") && !file.getName().endsWith(".jpg") && !file.getName().endsWith(".jpeg")) throw new IllegalArgumentException("File must be a valid image file (png, jpg, jpeg).");
-        try (final OutputStream os = new FileOutputStream(file)) {
-            os.write(imageBytes);
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeImageTo(channel);
         }
     }
 
     public ByteArrayInputStream getByteArrayInputStream() {
-        return new ByteArrayInputStream(imageBytes);
+        return new ByteArrayInputStream(imageBytes());
+    }
+
+    /**
+     * Opens a stream, which reads the image without copying it into a byte array first.
+     * @return The stream.
+     * @throws IllegalStateException If this book has no image data.
+     */
+    public InputStream openImageStream() {
+        if(image == null) throw new IllegalStateException("This book has no image data.");
+        return image.openStream();
     }
 
 }
@@ -0,0 +1,33 @@
+package de.joshicodes.aghpb4j.objects;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A book, whose image data is streamed from the response instead of being loaded into memory. <br>
+ * The stream must be closed after use, otherwise the connection can't be reused.
+ * @param book The metadata of the book. Does not contain any image data.
+ * @param inputStream The stream of the image data.
+ */
+public record BookStream(AGHPBook book, InputStream inputStream) implements Closeable {
+
+    /**
+     * Writes the image data to the OutputStream and closes the stream afterwards.
+     * @param outputStream The OutputStream to write to.
+     * @return The amount of bytes written.
+     * @throws IOException If an I/O error occurs.
+     */
+    public long transferTo(final OutputStream outputStream) throws IOException {
+        try (this) {
+            return inputStream.transferTo(outputStream);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+}
@@ -0,0 +1,245 @@
+package de.joshicodes.aghpb4j.objects;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The image data of an {@link AGHPBook}. <br>
+ * The data can be held in a byte array, in a (direct or memory-mapped) {@link ByteBuffer} outside of the heap,
+ * or be loaded lazily on first access, e.g. from a cache. <br>
+ * All views are read-only. Use {@link #writeTo(WritableByteChannel)} to write the image without copying it into a byte array first.
+ *
+ * @see #of(byte[])
+ * @see #of(ByteBuffer)
+ * @see #direct(byte[])
+ * @see #lazy(Callable)
+ */
+public abstract class ImagePayload {
+
+    /**
+     * Creates a payload, which holds the byte array. The array is not copied and must not be modified afterwards.
+     * @param bytes The image data.
+     * @return The payload.
+     */
+    public static ImagePayload of(final byte[] bytes) {
+        if(bytes == null) throw new IllegalArgumentException("Bytes cannot be null.");
+        return new HeapPayload(bytes);
+    }
+
+    /**
+     * Creates a payload, which is a view of the remaining bytes of the buffer. The buffer is not copied and must not be modified afterwards.
+     * @param buffer The image data, e.g. a direct or memory-mapped buffer.
+     * @return The payload.
+     */
+    public static ImagePayload of(final ByteBuffer buffer) {
+        if(buffer == null) throw new IllegalArgumentException("Buffer cannot be null.");
+        return new BufferPayload(buffer.slice().asReadOnlyBuffer());
+    }
+
+    /**
+     * Creates a payload, which copies the bytes into a direct buffer outside of the heap.
+     * @param bytes The image data.
+     * @return The payload.
+     */
+    public static ImagePayload direct(final byte[] bytes) {
+        if(bytes == null) throw new IllegalArgumentException("Bytes cannot be null.");
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return new BufferPayload(buffer.asReadOnlyBuffer());
+    }
+
+    /**
+     * Creates a payload, which calls the loader on first access and keeps its result.
+     * @param loader The loader, which returns the image data.
+     * @return The payload.
+     */
+    public static ImagePayload lazy(final Callable<ByteBuffer> loader) {
+        if(loader == null) throw new IllegalArgumentException("Loader cannot be null.");
+        return new LazyPayload(loader);
+    }
+
+    /**
+     * Returns the size of the image.
+     * @return The size in bytes.
+     * @throws UncheckedIOException If the image is loaded lazily and could not be loaded.
+     */
+    public abstract long size();
+
+    /**
+     * Returns a read-only view of the image. The view is positioned at the start of the image and is independent of other views.
+     * @return The view.
+     * @throws UncheckedIOException If the image is loaded lazily and could not be loaded.
+     */
+    public abstract ByteBuffer asByteBuffer();
+
+    /**
+     * Returns whether the image is held in memory, or has to be loaded first.
+     * @return true, if the image is available without loading it.
+     */
+    public boolean isLoaded() {
+        return true;
+    }
+
+    /**
+     * Returns the image as a byte array. <br>
+     * If the payload holds a byte array, it is returned without copying and must not be modified. Otherwise, a copy is created on the heap.
+     * @return The image data.
+     */
+    public byte[] toByteArray() {
+        final ByteBuffer buffer = asByteBuffer();
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Opens a stream, which reads the image.
+     * @return The stream.
+     */
+    public InputStream openStream() {
+        final ByteBuffer buffer = asByteBuffer();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) {
+                if(len == 0) return 0;
+                if(!buffer.hasRemaining()) return -1;
+                final int n = Math.min(len, buffer.remaining());
+                buffer.get(b, off, n);
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return buffer.remaining();
+            }
+        };
+    }
+
+    /**
+     * Writes the image to the channel, directly from the underlying buffer.
+     * @param channel The channel. It is not closed.
+     * @return The amount of bytes written.
+     * @throws IOException If the image could not be written.
+     */
+    public long writeTo(final WritableByteChannel channel) throws IOException {
+        final ByteBuffer buffer = asByteBuffer();
+        long written = 0;
+        while(buffer.hasRemaining()) {
+            written += channel.write(buffer);
+        }
+        return written;
+    }
+
+    private static class HeapPayload extends ImagePayload {
+
+        private final byte[] bytes;
+
+        private HeapPayload(final byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public long size() {
+            return bytes.length;
+        }
+
+        @Override
+        public ByteBuffer asByteBuffer() {
+            return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+        }
+
+        @Override
+        public byte[] toByteArray() {
+            return bytes;
+        }
+
+        @Override
+        public InputStream openStream() {
+            return new ByteArrayInputStream(bytes);
+        }
+
+    }
+
+    private static class BufferPayload extends ImagePayload {
+
+        private final ByteBuffer buffer;
+
+        private BufferPayload(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public long size() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public ByteBuffer asByteBuffer() {
+            return buffer.duplicate();
+        }
+
+    }
+
+    private static class LazyPayload extends ImagePayload {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private Callable<ByteBuffer> loader;
+        private volatile ByteBuffer buffer;
+
+        private LazyPayload(final Callable<ByteBuffer> loader) {
+            this.loader = loader;
+        }
+
+        @Override
+        public long size() {
+            return load().remaining();
+        }
+
+        @Override
+        public ByteBuffer asByteBuffer() {
+            return load().duplicate();
+        }
+
+        @Override
+        public boolean isLoaded() {
+            return buffer != null;
+        }
+
+        private ByteBuffer load() {
+            ByteBuffer loaded = buffer;
+            if(loaded != null) return loaded;
+            lock.lock();
+            try {
+                if(buffer == null) {
+                    final ByteBuffer result = loader.call();
+                    if(result == null) throw new IllegalStateException("The loader of the image returned null.");
+                    buffer = result.slice().asReadOnlyBuffer();
+                    // The loader may hold on to resources, which are not needed anymore
+                    loader = null;
+                }
+                return buffer;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not load image", e);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("Could not load image", e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+    }
+
+}
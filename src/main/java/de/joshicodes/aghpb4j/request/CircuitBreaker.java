@@ -0,0 +1,135 @@
+package de.joshicodes.aghpb4j.request;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Circuit breaker, which stops sending requests after repeated failures. <br>
+ * After <code>failureThreshold</code> failed attempts in a row, the circuit opens and every request fails immediately with a {@link CircuitOpenException}.
+ * Once the open duration has passed, a single probe request is let through. If it succeeds, the circuit closes again, otherwise it stays open for another period. <br>
+ * Instances are thread-safe and can be shared between AGHPB instances, which talk to the same API.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        /**
+         * Requests are sent normally.
+         */
+        CLOSED,
+        /**
+         * Requests fail immediately.
+         */
+        OPEN,
+        /**
+         * A single probe request is in flight to check if the API recovered.
+         */
+        HALF_OPEN
+    }
+
+    private record Status(State state, int failures, long openUntil) { }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final AtomicReference<Status> status = new AtomicReference<>(new Status(State.CLOSED, 0, 0));
+
+    /**
+     * Creates a CircuitBreaker, which opens after 5 failures in a row for 30 seconds.
+     */
+    public CircuitBreaker() {
+        this(5, Duration.ofSeconds(30));
+    }
+
+    /**
+     * Creates a new CircuitBreaker.
+     * @param failureThreshold The amount of failures in a row, after which the circuit opens.
+     * @param openDuration The duration, for which the circuit stays open before a probe is sent.
+     */
+    public CircuitBreaker(final int failureThreshold, final Duration openDuration) {
+        if(failureThreshold < 1) throw new IllegalArgumentException("failureThreshold must be at least 1.");
+        if(openDuration == null || openDuration.isNegative()) throw new IllegalArgumentException("openDuration cannot be null or negative.");
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openDuration.toMillis();
+    }
+
+    /**
+     * Checks if a request may be sent. <br>
+     * If the circuit is open and the open duration has passed, this call switches it to {@link State#HALF_OPEN} and allows exactly one probe.
+     * @return true, if the request may be sent.
+     */
+    public boolean tryAcquire() {
+        while(true) {
+            final Status current = status.get();
+            switch (current.state()) {
+                case CLOSED:
+                    return true;
+                case HALF_OPEN:
+                case OPEN:
+                    // In HALF_OPEN, openUntil guards against a probe, which never reported back
+                    final long now = System.currentTimeMillis();
+                    if(now < current.openUntil()) return false;
+                    if(status.compareAndSet(current, new Status(State.HALF_OPEN, current.failures(), now + openMillis))) return true;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Records a successful attempt. Closes the circuit.
+     */
+    public void onSuccess() {
+        final Status current = status.get();
+        if(current.state() == State.CLOSED && current.failures() == 0) return;
+        status.set(new Status(State.CLOSED, 0, 0));
+    }
+
+    /**
+     * Records a failed attempt. Opens the circuit, if the threshold was reached or the probe failed.
+     */
+    public void onFailure() {
+        while(true) {
+            final Status current = status.get();
+            final Status next;
+            if(current.state() == State.OPEN) {
+                // A request sent before the circuit opened
+                return;
+            } else if(current.state() == State.HALF_OPEN || current.failures() + 1 >= failureThreshold) {
+                next = new Status(State.OPEN, current.failures() + 1, System.currentTimeMillis() + openMillis);
+            } else {
+                next = new Status(State.CLOSED, current.failures() + 1, 0);
+            }
+            if(status.compareAndSet(current, next)) return;
+        }
+    }
+
+    /**
+     * Returns the current state of the circuit.
+     * @return The state.
+     */
+    public State getState() {
+        return status.get().state();
+    }
+
+    /**
+     * Returns the time in milliseconds, until a probe will be let through.
+     * @return The remaining open time, or 0 if the circuit is not open.
+     */
+    public long getRemainingOpenTime() {
+        final Status current = status.get();
+        if(current.state() != State.OPEN) return 0;
+        return Math.max(0, current.openUntil() - System.currentTimeMillis());
+    }
+
+    /**
+     * Thrown, if a request is rejected, because the circuit is open.
+     */
+    public static class CircuitOpenException extends IllegalStateException {
+
+        private static final long serialVersionUID = 1L;
+
+        public CircuitOpenException(final String message) {
+            super(message);
+        }
+
+    }
+
+}
@@ -0,0 +1,72 @@
+package de.joshicodes.aghpb4j.request;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Forwards the events to several listeners. A listener, which throws an exception, doesn't keep the others from receiving the event.
+ */
+public class CompositeRequestListener implements RequestListener {
+
+    private final List<RequestListener> listeners;
+
+    public CompositeRequestListener(final List<RequestListener> listeners) {
+        if(listeners == null) throw new IllegalArgumentException("Listeners cannot be null.");
+        this.listeners = List.copyOf(listeners);
+    }
+
+    public List<RequestListener> getListeners() {
+        return listeners;
+    }
+
+    @Override
+    public void onRequestStart(final Request request) {
+        fire(listener -> listener.onRequestStart(request));
+    }
+
+    @Override
+    public void onRateLimitWait(final Request request, final long waitNanos) {
+        fire(listener -> listener.onRateLimitWait(request, waitNanos));
+    }
+
+    @Override
+    public void onResponseHeaders(final Request request, final int attempt, final int statusCode, final long timeToHeadersNanos) {
+        fire(listener -> listener.onResponseHeaders(request, attempt, statusCode, timeToHeadersNanos));
+    }
+
+    @Override
+    public void onBytesReceived(final Request request, final long bytes) {
+        fire(listener -> listener.onBytesReceived(request, bytes));
+    }
+
+    @Override
+    public void onBodyComplete(final Request request, final int attempt, final long transferNanos) {
+        fire(listener -> listener.onBodyComplete(request, attempt, transferNanos));
+    }
+
+    @Override
+    public void onRetry(final Request request, final int retry, final int statusCode, final Throwable error, final long delayMillis) {
+        fire(listener -> listener.onRetry(request, retry, statusCode, error, delayMillis));
+    }
+
+    @Override
+    public void onFailover(final Request request, final String endpoint, final int statusCode, final Throwable error) {
+        fire(listener -> listener.onFailover(request, endpoint, statusCode, error));
+    }
+
+    @Override
+    public void onComplete(final Request request, final int statusCode, final long durationNanos, final Throwable error) {
+        fire(listener -> listener.onComplete(request, statusCode, durationNanos, error));
+    }
+
+    private void fire(final Consumer<RequestListener> event) {
+        for(RequestListener listener : listeners) {
+            try {
+                event.accept(listener);
+            } catch (RuntimeException ignored) {
+                // A broken listener must not break the request
+            }
+        }
+    }
+
+}
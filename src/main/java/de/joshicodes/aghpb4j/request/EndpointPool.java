@@ -0,0 +1,287 @@
+package de.joshicodes.aghpb4j.request;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of equivalent AGHPB API instances, e.g. several mirrors, between which requests are balanced. <br>
+ * Every attempt is sent to the healthy endpoint with the lowest score, which is the EWMA of its latency multiplied by its outstanding requests.
+ * So slow or busy endpoints receive less traffic. <br>
+ * After <code>failureThreshold</code> connection errors or 5xx responses in a row, an endpoint is taken out of the pool.
+ * It is checked with a request to <code>/nya</code> every <code>downDuration</code>, and returns once the check succeeds.
+ * If every endpoint is down, requests are still sent to the one with the fewest failures. <br>
+ * A pool must only be used by one AGHPB instance.
+ *
+ * @see de.joshicodes.aghpb4j.AGHPB.Builder#setEndpointPool(EndpointPool)
+ */
+public class EndpointPool {
+
+    /**
+     * The weight of a new latency sample in the EWMA.
+     */
+    private static final double ALPHA = 0.3;
+    /**
+     * The minimum latency a failure counts as, in nanoseconds.
+     */
+    private static final long FAILURE_PENALTY = TimeUnit.SECONDS.toNanos(1);
+    private static final Duration HEALTH_CHECK_TIMEOUT = Duration.ofSeconds(5);
+
+    /**
+     * An endpoint of the pool.
+     */
+    public static class Endpoint {
+
+        private final String url;
+        private final AtomicLong latency = new AtomicLong();
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicBoolean down = new AtomicBoolean();
+
+        private Endpoint(final String url) {
+            this.url = url;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * Returns the exponentially weighted moving average of the latency of this endpoint.
+         * @return The latency in nanoseconds, or 0 if no request was answered yet.
+         */
+        public long getLatency() {
+            return latency.get();
+        }
+
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        public int getFailures() {
+            return failures.get();
+        }
+
+        public boolean isDown() {
+            return down.get();
+        }
+
+        private double score() {
+            // New endpoints have a latency of 0 and are tried first
+            return (latency.get() + 1) * (double) (outstanding.get() + 1);
+        }
+
+        @Override
+        public String toString() {
+            return "Endpoint[url=" + url + ", latency=" + latency.get() + ", outstanding=" + outstanding.get() + ", failures=" + failures.get() + ", down=" + down.get() + "]";
+        }
+
+    }
+
+    private final List<Endpoint> endpoints;
+    private int failureThreshold = 3;
+    private Duration downDuration = Duration.ofSeconds(10);
+    private volatile HttpClient client;
+    private volatile Executor executor;
+
+    /**
+     * Creates a new EndpointPool.
+     * @param urls The urls of the endpoints. The first one is used to build the urls of the requests.
+     */
+    public EndpointPool(final String... urls) {
+        this(List.of(urls));
+    }
+
+    /**
+     * Creates a new EndpointPool.
+     * @param urls The urls of the endpoints. The first one is used to build the urls of the requests.
+     */
+    public EndpointPool(final Collection<String> urls) {
+        if(urls == null || urls.isEmpty()) throw new IllegalArgumentException("At least one url is required.");
+        final List<Endpoint> endpoints = new ArrayList<>();
+        for(String url : urls) {
+            if(url == null) throw new IllegalArgumentException("Url cannot be null.");
+            endpoints.add(new Endpoint(url.endsWith("/") ? url.substring(0, url.length() - 1) : url));
+        }
+        this.endpoints = List.copyOf(endpoints);
+    }
+
+    /**
+     * Sets the amount of failures in a row, after which an endpoint is taken out of the pool. Defaults to 3.
+     * @param failureThreshold The amount of failures. Must be at least 1.
+     * @return This EndpointPool.
+     */
+    public EndpointPool setFailureThreshold(final int failureThreshold) {
+        if(failureThreshold < 1) throw new IllegalArgumentException("failureThreshold must be at least 1.");
+        this.failureThreshold = failureThreshold;
+        return this;
+    }
+
+    /**
+     * Sets the interval, in which an endpoint, which is down, is checked. Defaults to 10 seconds.
+     * @param downDuration The interval.
+     * @return This EndpointPool.
+     */
+    public EndpointPool setDownDuration(final Duration downDuration) {
+        if(downDuration == null || downDuration.isNegative()) throw new IllegalArgumentException("downDuration cannot be null or negative.");
+        this.downDuration = downDuration;
+        return this;
+    }
+
+    /**
+     * Sets the client and the executor, which are used for health checks. Called by the AGHPB instance, which uses this pool.
+     * @param client The HttpClient.
+     * @param executor The executor.
+     */
+    public void bind(final HttpClient client, final Executor executor) {
+        this.client = client;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the url, which is used to build the urls of the requests.
+     * @return The url of the first endpoint.
+     */
+    public String getPrimaryUrl() {
+        return endpoints.get(0).getUrl();
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Selects the endpoint for the next attempt.
+     * @param exclude Endpoints, which already failed for this request. They are only selected, if no other endpoint is up.
+     * @return The endpoint.
+     */
+    public Endpoint select(final Collection<Endpoint> exclude) {
+        Endpoint best = null;
+        for(Endpoint endpoint : endpoints) {
+            if(endpoint.isDown() || exclude.contains(endpoint)) continue;
+            if(best == null || endpoint.score() < best.score()) best = endpoint;
+        }
+        if(best != null) return best;
+        // Everything failed, fall back to the least broken endpoint
+        for(Endpoint endpoint : endpoints) {
+            if(best == null || endpoint.getFailures() < best.getFailures() || (endpoint.getFailures() == best.getFailures() && endpoint.score() < best.score())) {
+                best = endpoint;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns whether there is an endpoint, which is up and not excluded.
+     * @param exclude Endpoints, which already failed for this request.
+     * @return true, if the request can fail over to another endpoint.
+     */
+    public boolean hasAlternative(final Collection<Endpoint> exclude) {
+        for(Endpoint endpoint : endpoints) {
+            if(!endpoint.isDown() && !exclude.contains(endpoint)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns a copy of the request, which is sent to the endpoint. Requests to other urls are returned unchanged.
+     * @param request The request, which was built with the primary url.
+     * @param endpoint The endpoint.
+     * @return The routed request.
+     */
+    public HttpRequest route(final HttpRequest request, final Endpoint endpoint) {
+        final String uri = request.uri().toString();
+        final String primary = getPrimaryUrl();
+        if(endpoint.getUrl().equals(primary) || !uri.startsWith(primary)) return request;
+        return HttpRequest.newBuilder(request, (name, value) -> true)
+                .uri(URI.create(endpoint.getUrl() + uri.substring(primary.length())))
+                .build();
+    }
+
+    /**
+     * Records that an attempt was sent to the endpoint.
+     * @param endpoint The endpoint.
+     */
+    public void onSend(final Endpoint endpoint) {
+        endpoint.outstanding.incrementAndGet();
+    }
+
+    /**
+     * Records a response of the endpoint, which was not an error.
+     * @param endpoint The endpoint.
+     * @param latencyNanos The time from sending the attempt until the response, in nanoseconds.
+     */
+    public void onSuccess(final Endpoint endpoint, final long latencyNanos) {
+        endpoint.outstanding.decrementAndGet();
+        endpoint.failures.set(0);
+        endpoint.latency.getAndUpdate(current -> current == 0 ? latencyNanos : (long) (current + ALPHA * (latencyNanos - current)));
+    }
+
+    /**
+     * Records that an attempt to the endpoint was cancelled, e.g. because a hedged request won. The latency is not affected.
+     * @param endpoint The endpoint.
+     */
+    public void onCancel(final Endpoint endpoint) {
+        endpoint.outstanding.decrementAndGet();
+    }
+
+    /**
+     * Records a connection error or a 5xx response of the endpoint. Takes the endpoint out of the pool, if the threshold was reached.
+     * @param endpoint The endpoint.
+     * @param latencyNanos The time from sending the attempt until the failure, in nanoseconds.
+     */
+    public void onFailure(final Endpoint endpoint, final long latencyNanos) {
+        endpoint.outstanding.decrementAndGet();
+        // Connection errors are often faster than real answers, so a failure counts as a slow answer. Failing endpoints get less traffic even before they are down.
+        final long penalty = Math.max(FAILURE_PENALTY, latencyNanos);
+        endpoint.latency.getAndUpdate(current -> current == 0 ? penalty : (long) (current + ALPHA * (Math.max(penalty, current * 2) - current)));
+        if(endpoint.failures.incrementAndGet() >= failureThreshold && endpoints.size() > 1 && endpoint.down.compareAndSet(false, true)) {
+            scheduleHealthCheck(endpoint);
+        }
+    }
+
+    private void scheduleHealthCheck(final Endpoint endpoint) {
+        final Executor executor = this.executor;
+        final HttpClient client = this.client;
+        if(executor == null || client == null) {
+            // Not bound, the endpoint returns after the next interval without a check
+            CompletableFuture.delayedExecutor(downDuration.toMillis(), TimeUnit.MILLISECONDS).execute(() -> endpoint.down.set(false));
+            return;
+        }
+        try {
+            CompletableFuture.delayedExecutor(downDuration.toMillis(), TimeUnit.MILLISECONDS, executor).execute(() -> checkHealth(endpoint, client));
+        } catch (RejectedExecutionException ignored) {
+            // The AGHPB instance was closed
+        }
+    }
+
+    private void checkHealth(final Endpoint endpoint, final HttpClient client) {
+        final HttpRequest request = HttpRequest.newBuilder(URI.create(endpoint.getUrl() + "/nya"))
+                .timeout(HEALTH_CHECK_TIMEOUT)
+                .GET()
+                .build();
+        final long start = System.nanoTime();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+            if(error == null && response.statusCode() == 200) {
+                endpoint.failures.set(0);
+                endpoint.latency.set(System.nanoTime() - start);
+                endpoint.down.set(false);
+            } else {
+                scheduleHealthCheck(endpoint);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,230 @@
+package de.joshicodes.aghpb4j.request;
+
+import de.joshicodes.aghpb4j.metrics.LatencyHistogram;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides when a slow image request is hedged, i.e. sent a second time. The first response wins and the other request is cancelled. <br>
+ * The hedge is sent, if no headers arrived within the delay. The delay is a percentile of the recently observed time to headers, e.g. p95,
+ * so only the slowest requests are hedged. Until enough requests were observed, the initial delay is used. <br>
+ * The extra load is capped by a budget: every request earns a fraction of a hedge, e.g. 0.05 for at most 5% hedged requests,
+ * and unused hedges are only saved up to a small burst. <br>
+ * A HedgingPolicy keeps statistics, so every AGHPB instance should use its own.
+ *
+ * @see #builder()
+ * @see de.joshicodes.aghpb4j.AGHPB.Builder#setHedgingPolicy(HedgingPolicy)
+ */
+public class HedgingPolicy {
+
+    /**
+     * Hedges are counted in thousandths, so that fractional budgets can be stored in a long.
+     */
+    private static final long UNIT = 1000;
+
+    /**
+     * Statistics of the hedging.
+     * @param requests The amount of requests, which could have been hedged.
+     * @param hedges The amount of hedges sent.
+     * @param hedgeWins The amount of requests, which were answered by the hedge.
+     * @param budgetExhausted The amount of hedges, which were not sent, because the budget was used up.
+     * @param delay The current hedge delay in nanoseconds.
+     */
+    public record HedgingStats(long requests, long hedges, long hedgeWins, long budgetExhausted, long delay) { }
+
+    private final double percentile;
+    private final long initialDelay;
+    private final long minDelay;
+    private final long maxDelay;
+    private final long budget;
+    private final long maxTokens;
+    private final int minSamples;
+    private final int window;
+
+    private final AtomicReference<LatencyHistogram> current = new AtomicReference<>(new LatencyHistogram());
+    private volatile LatencyHistogram previous;
+    private final AtomicLong tokens;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    private HedgingPolicy(final Builder builder) {
+        this.percentile = builder.percentile;
+        this.initialDelay = builder.initialDelay.toNanos();
+        this.minDelay = builder.minDelay.toNanos();
+        this.maxDelay = builder.maxDelay.toNanos();
+        this.budget = Math.round(builder.budget * UNIT);
+        this.maxTokens = builder.burst * UNIT;
+        this.minSamples = builder.minSamples;
+        this.window = builder.window;
+        this.tokens = new AtomicLong(maxTokens);
+    }
+
+    /**
+     * Creates a new Builder for a HedgingPolicy.
+     * @return The new Builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the time, after which a request without headers is hedged. <br>
+     * This is the configured percentile of the recent time to headers, limited by the minimum and maximum delay.
+     * @return The delay in nanoseconds.
+     */
+    public long getDelay() {
+        LatencyHistogram histogram = current.get();
+        if(histogram.getCount() < minSamples) {
+            histogram = previous;
+            if(histogram == null) return initialDelay;
+        }
+        return Math.min(maxDelay, Math.max(minDelay, histogram.getPercentile(percentile)));
+    }
+
+    /**
+     * Records the start of a request, which could be hedged, and adds its share to the budget.
+     */
+    public void onRequest() {
+        requests.increment();
+        tokens.getAndUpdate(t -> Math.min(maxTokens, t + budget));
+    }
+
+    /**
+     * Records the time until the headers of a request arrived. <br>
+     * If a hedge won, the time until then is recorded for the first request, as a lower bound of its latency.
+     * @param nanos The time to headers in nanoseconds.
+     */
+    public void recordLatency(final long nanos) {
+        final LatencyHistogram histogram = current.get();
+        histogram.record(nanos);
+        // Start a new window, so the delay follows changes of the latency
+        if(histogram.getCount() >= window && current.compareAndSet(histogram, new LatencyHistogram())) {
+            previous = histogram;
+        }
+    }
+
+    /**
+     * Takes a hedge from the budget.
+     * @return true, if the hedge may be sent.
+     */
+    public boolean tryHedge() {
+        final long before = tokens.getAndUpdate(t -> t >= UNIT ? t - UNIT : t);
+        if(before < UNIT) {
+            budgetExhausted.increment();
+            return false;
+        }
+        hedges.increment();
+        return true;
+    }
+
+    /**
+     * Records that a request was answered by its hedge.
+     */
+    public void onHedgeWin() {
+        hedgeWins.increment();
+    }
+
+    /**
+     * Returns the statistics of this policy.
+     * @return The statistics.
+     */
+    public HedgingStats getStats() {
+        return new HedgingStats(requests.sum(), hedges.sum(), hedgeWins.sum(), budgetExhausted.sum(), getDelay());
+    }
+
+    public static class Builder {
+
+        private double percentile = 95;
+        private Duration initialDelay = Duration.ofMillis(500);
+        private Duration minDelay = Duration.ofMillis(10);
+        private Duration maxDelay = Duration.ofSeconds(5);
+        private double budget = 0.05;
+        private int burst = 10;
+        private int minSamples = 20;
+        private int window = 1000;
+
+        private Builder() { }
+
+        /**
+         * Sets the percentile of the time to headers, after which a request is hedged. Defaults to 95.
+         * @param percentile The percentile between 0 and 100.
+         * @return This Builder.
+         */
+        public Builder setPercentile(final double percentile) {
+            if(percentile <= 0 || percentile > 100) throw new IllegalArgumentException("percentile must be greater than 0 and at most 100.");
+            this.percentile = percentile;
+            return this;
+        }
+
+        /**
+         * Sets the delay, which is used until enough requests were observed. Defaults to 500 milliseconds.
+         * @param initialDelay The delay.
+         * @return This Builder.
+         */
+        public Builder setInitialDelay(final Duration initialDelay) {
+            if(initialDelay == null || initialDelay.isNegative()) throw new IllegalArgumentException("initialDelay cannot be null or negative.");
+            this.initialDelay = initialDelay;
+            return this;
+        }
+
+        /**
+         * Sets the limits of the delay. Defaults to 10 milliseconds and 5 seconds.
+         * @param minDelay The minimum delay.
+         * @param maxDelay The maximum delay.
+         * @return This Builder.
+         */
+        public Builder setDelayBounds(final Duration minDelay, final Duration maxDelay) {
+            if(minDelay == null || maxDelay == null || minDelay.isNegative() || maxDelay.compareTo(minDelay) < 0) throw new IllegalArgumentException("Delays must satisfy 0 <= min <= max.");
+            this.minDelay = minDelay;
+            this.maxDelay = maxDelay;
+            return this;
+        }
+
+        /**
+         * Sets the fraction of requests, which may be hedged. Defaults to 0.05.
+         * @param budget The fraction between 0 and 1.
+         * @return This Builder.
+         */
+        public Builder setBudget(final double budget) {
+            if(budget < 0 || budget > 1) throw new IllegalArgumentException("budget must be between 0 and 1.");
+            this.budget = budget;
+            return this;
+        }
+
+        /**
+         * Sets the amount of unused hedges, which are saved up. Defaults to 10.
+         * @param burst The amount of hedges.
+         * @return This Builder.
+         */
+        public Builder setBurst(final int burst) {
+            if(burst < 1) throw new IllegalArgumentException("burst must be at least 1.");
+            this.burst = burst;
+            return this;
+        }
+
+        /**
+         * Sets how many requests are observed, before the percentile is used instead of the initial delay,
+         * and after how many requests the observations start over. Defaults to 20 and 1000.
+         * @param minSamples The minimum amount of observations.
+         * @param window The amount of observations per window.
+         * @return This Builder.
+         */
+        public Builder setSamples(final int minSamples, final int window) {
+            if(minSamples < 1 || window < minSamples) throw new IllegalArgumentException("Samples must satisfy 1 <= minSamples <= window.");
+            this.minSamples = minSamples;
+            this.window = window;
+            return this;
+        }
+
+        public HedgingPolicy build() {
+            return new HedgingPolicy(this);
+        }
+
+    }
+
+}
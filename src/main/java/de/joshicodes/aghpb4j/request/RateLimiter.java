@@ -0,0 +1,280 @@
+package de.joshicodes.aghpb4j.request;
+
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Rate limit governor, which is shared by all actions of an AGHPB instance. <br>
+ * The limiter works like a token bucket, which is kept in sync with the <code>x-ratelimit-*</code> headers of the API.
+ * As long as the API did not tell us about a limit, every request is let through immediately. <br>
+ * Once the bucket is empty, new requests are queued in the order they were made and released after the limit resets.
+ * Waiting requests do not block any thread.
+ */
+public class RateLimiter {
+
+    public static final String HEADER_LIMIT = "x-ratelimit-limit";
+    public static final String HEADER_REMAINING = "x-ratelimit-remaining";
+    public static final String HEADER_RESET = "x-ratelimit-reset";
+    public static final String HEADER_RETRY_AFTER = "retry-after";
+
+    /**
+     * Reset values below this are treated as seconds from now, everything else as epoch seconds.
+     */
+    private static final long EPOCH_THRESHOLD = 1_000_000_000L;
+
+    private final Executor executor;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+
+    /**
+     * The tokens left until the reset, or -1 if unknown.
+     */
+    private int remaining = -1;
+    /**
+     * The maximum tokens per window, or -1 if unknown.
+     */
+    private int limit = -1;
+    /**
+     * The time in epoch millis, at which the bucket will be refilled.
+     */
+    private long resetAt = 0;
+    /**
+     * The reset time of the last window the API told us about.
+     */
+    private long windowReset = 0;
+    /**
+     * Whether the bucket was refilled locally for a window, which the API did not tell us about yet.
+     */
+    private boolean refilled = false;
+    private boolean drainScheduled = false;
+
+    /**
+     * Creates a new RateLimiter.
+     * @param executor The executor, which is used to release waiting requests.
+     */
+    public RateLimiter(final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Acquires a permit to send a request. <br>
+     * The returned future completes immediately, if a permit is available. Otherwise, it will be completed once the limit was reset.
+     * Waiting requests are released in the order they called this method.
+     * @return A CompletableFuture, which completes when the request may be sent.
+     */
+    public CompletableFuture<Void> acquire() {
+        lock.lock();
+        try {
+            refill(System.currentTimeMillis());
+            if(waiting.isEmpty() && tryConsume()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            final CompletableFuture<Void> future = new CompletableFuture<>();
+            waiting.add(future);
+            scheduleDrain();
+            return future;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Updates the bucket with the rate limit headers of a response. <br>
+     * If the response has the status code 429, the bucket is emptied until the limit resets.
+     * @param response The response.
+     */
+    public void update(final HttpResponse<?> response) {
+        update(response.headers(), response.statusCode() == 429);
+    }
+
+    /**
+     * Updates the bucket with the rate limit headers of a response.
+     * @param headers The headers of the response.
+     * @param limited Whether the response was rejected because of the rate limit.
+     */
+    public void update(final HttpHeaders headers, final boolean limited) {
+        final long now = System.currentTimeMillis();
+        final int headerRemaining = parseInt(headers.firstValue(HEADER_REMAINING).orElse(null));
+        final int headerLimit = parseInt(headers.firstValue(HEADER_LIMIT).orElse(null));
+        long headerReset = parseReset(headers.firstValue(HEADER_RESET).orElse(null), now);
+        if(headerReset <= 0 && limited) {
+            headerReset = parseReset(headers.firstValue(HEADER_RETRY_AFTER).orElse(null), now);
+        }
+        if(headerRemaining < 0 && headerReset <= 0 && !limited) {
+            return;
+        }
+        final List<CompletableFuture<Void>> released;
+        lock.lock();
+        try {
+            if(headerLimit > 0) {
+                limit = headerLimit;
+            }
+            final int newRemaining = limited ? 0 : headerRemaining;
+            // The response belongs to an older window and arrived after the window changed, its remaining tokens are outdated.
+            // After a local refill, every response, which does not announce a newer window, was sent before the refill
+            final boolean outdated = refilled ? headerReset <= windowReset + 999 : headerReset > 0 && headerReset < windowReset - 999;
+            if(headerReset > windowReset + 999) {
+                // A new window started
+                windowReset = headerReset;
+                resetAt = headerReset;
+                if(refilled && remaining >= 0 && newRemaining >= 0) {
+                    // We already started sending in this window, so the requests in flight are not yet part of the header
+                    remaining = Math.min(remaining, newRemaining);
+                } else {
+                    remaining = newRemaining;
+                }
+                refilled = false;
+            } else if(newRemaining >= 0 && !outdated) {
+                // Same window, responses may arrive out of order
+                remaining = remaining < 0 ? newRemaining : Math.min(remaining, newRemaining);
+            }
+            if(remaining == 0 && resetAt <= now) {
+                // We don't know when the limit resets, so we retry a second later
+                resetAt = now + 1000;
+            }
+            released = release();
+            if(!waiting.isEmpty()) {
+                scheduleDrain();
+            }
+        } finally {
+            lock.unlock();
+        }
+        released.forEach(future -> future.complete(null));
+    }
+
+    /**
+     * Returns the number of requests, which are currently waiting for the rate limit.
+     * @return The number of waiting requests.
+     */
+    public int getQueueSize() {
+        lock.lock();
+        try {
+            return waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the tokens left in the current window.
+     * @return The remaining tokens, or -1 if unknown.
+     */
+    public int getRemaining() {
+        lock.lock();
+        try {
+            return remaining;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the delay in milliseconds, until the next request could be sent.
+     * @return The delay, or 0 if a request could be sent immediately.
+     */
+    public long getDelay() {
+        lock.lock();
+        try {
+            final long now = System.currentTimeMillis();
+            refill(now);
+            if(remaining != 0 && waiting.isEmpty()) return 0;
+            return Math.max(0, resetAt - now);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void drain() {
+        final List<CompletableFuture<Void>> released;
+        lock.lock();
+        try {
+            drainScheduled = false;
+            refill(System.currentTimeMillis());
+            released = release();
+            if(!waiting.isEmpty()) {
+                scheduleDrain();
+            }
+        } finally {
+            lock.unlock();
+        }
+        released.forEach(future -> future.complete(null));
+    }
+
+    /**
+     * Removes as many waiting futures from the queue as there are tokens. Must be called while holding the lock. <br>
+     * The futures have to be completed after releasing the lock.
+     */
+    private List<CompletableFuture<Void>> release() {
+        final List<CompletableFuture<Void>> released = new ArrayList<>();
+        while(!waiting.isEmpty()) {
+            final CompletableFuture<Void> next = waiting.peek();
+            if(next.isDone()) {
+                // Cancelled while waiting
+                waiting.poll();
+                continue;
+            }
+            if(!tryConsume()) break;
+            released.add(waiting.poll());
+        }
+        return released;
+    }
+
+    private boolean tryConsume() {
+        if(remaining < 0) return true;
+        if(remaining == 0) return false;
+        remaining--;
+        if(remaining == 0 && resetAt <= 0) {
+            // The bucket was refilled locally and the API did not tell us about the new reset yet
+            resetAt = System.currentTimeMillis() + 1000;
+        }
+        return true;
+    }
+
+    private void refill(final long now) {
+        if(remaining >= 0 && resetAt > 0 && now >= resetAt) {
+            // If we don't know the limit, we let the requests through until the API tells us otherwise
+            remaining = limit;
+            resetAt = 0;
+            refilled = true;
+        }
+    }
+
+    private void scheduleDrain() {
+        if(drainScheduled) return;
+        drainScheduled = true;
+        final long delay = Math.max(1, resetAt - System.currentTimeMillis());
+        CompletableFuture.runAsync(this::drain, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, executor));
+    }
+
+    private static int parseInt(final String value) {
+        if(value == null) return -1;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long parseReset(final String value, final long now) {
+        if(value == null) return 0;
+        final double seconds;
+        try {
+            seconds = Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+        if(seconds <= 0) return 0;
+        if(seconds < EPOCH_THRESHOLD) {
+            return now + (long) (seconds * 1000);
+        }
+        return (long) (seconds * 1000);
+    }
+
+}
@@ -0,0 +1,151 @@
+package de.joshicodes.aghpb4j.request;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Lets identical requests, which are in flight at the same time, share a single exchange. <br>
+ * The first caller sends the request, every caller arriving before it completes receives the same result.
+ * Once the request completed, the next caller sends a new one. If every caller gave up on the request before, it is cancelled.
+ */
+public class RequestCoalescer {
+
+    /**
+     * Identifies identical requests.
+     * @param uri The uri of the request.
+     * @param method The method of the request.
+     * @param accept The Accept header of the request. Can be null.
+     * @param bodyType The type the response body is read as.
+     */
+    public record Key(String uri, String method, String accept, Class<?> bodyType) { }
+
+    private final ConcurrentHashMap<Key, Shared<?>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Returns the result of the request in flight for the key, or starts a new one. <br>
+     * Every caller receives its own future. Completing or cancelling it does not affect the other callers,
+     * but once every caller completed its future before the request did, the request is cancelled.
+     * @param key The key of the request.
+     * @param request Sends the request, if none is in flight.
+     * @return A CompletableFuture for the result.
+     * @param <R> The type of the result.
+     */
+    @SuppressWarnings("unchecked")
+    public <R> CompletableFuture<R> coalesce(final Key key, final Supplier<CompletableFuture<R>> request) {
+        while(true) {
+            final Shared<R> created = new Shared<>();
+            final Shared<R> existing = (Shared<R>) inFlight.putIfAbsent(key, created);
+            if(existing != null) {
+                final CompletableFuture<R> joined = subscribe(key, existing);
+                if(joined != null) {
+                    coalesced.increment();
+                    return joined;
+                }
+                // Every caller left the request, before it was removed
+                inFlight.remove(key, existing);
+                continue;
+            }
+            final CompletableFuture<R> subscription = subscribe(key, created);
+            final CompletableFuture<R> future;
+            try {
+                future = request.get();
+            } catch (RuntimeException e) {
+                inFlight.remove(key, created);
+                created.result.completeExceptionally(e);
+                throw e;
+            }
+            created.lock.lock();
+            final boolean abandoned;
+            try {
+                created.exchange = future;
+                abandoned = created.abandoned;
+            } finally {
+                created.lock.unlock();
+            }
+            if(abandoned) future.cancel(true);
+            future.whenComplete((result, error) -> {
+                // Remove first, so that callers arriving after completion send a new request
+                inFlight.remove(key, created);
+                if(error != null) {
+                    created.result.completeExceptionally(error);
+                } else {
+                    created.result.complete(result);
+                }
+            });
+            return subscription;
+        }
+    }
+
+    /**
+     * Adds a caller to the shared request.
+     * @return The future of the caller, or null if the request has already been abandoned.
+     */
+    private <R> CompletableFuture<R> subscribe(final Key key, final Shared<R> shared) {
+        shared.lock.lock();
+        try {
+            if(shared.abandoned) return null;
+            shared.subscribers++;
+        } finally {
+            shared.lock.unlock();
+        }
+        final CompletableFuture<R> subscription = shared.result.copy();
+        subscription.whenComplete((result, error) -> {
+            // Completed by the caller, e.g. cancelled or timed out
+            if(!shared.result.isDone()) unsubscribe(key, shared);
+        });
+        return subscription;
+    }
+
+    /**
+     * Removes a caller from the shared request and cancels the request, if it was the last one.
+     */
+    private void unsubscribe(final Key key, final Shared<?> shared) {
+        final CompletableFuture<?> exchange;
+        shared.lock.lock();
+        try {
+            if(--shared.subscribers > 0 || shared.result.isDone()) return;
+            shared.abandoned = true;
+            exchange = shared.exchange;
+        } finally {
+            shared.lock.unlock();
+        }
+        inFlight.remove(key, shared);
+        // If the request is still being started, it is cancelled once it has been
+        if(exchange != null) exchange.cancel(true);
+        shared.result.cancel(false);
+    }
+
+    /**
+     * A request, which is shared by several callers.
+     */
+    private static final class Shared<R> {
+
+        private final CompletableFuture<R> result = new CompletableFuture<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private CompletableFuture<R> exchange;
+        private int subscribers = 0;
+        private boolean abandoned = false;
+
+    }
+
+    /**
+     * Returns the amount of requests, which are currently in flight.
+     * @return The amount of requests.
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * Returns the amount of requests, which joined a request in flight instead of sending their own.
+     * @return The amount of coalesced requests.
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+}
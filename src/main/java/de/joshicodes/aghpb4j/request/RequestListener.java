@@ -0,0 +1,98 @@
+package de.joshicodes.aghpb4j.request;
+
+import java.net.URI;
+
+/**
+ * Receives events about the requests of an AGHPB instance, e.g. to record metrics or traces. <br>
+ * All methods have an empty default implementation, so only the needed events have to be implemented.
+ * Events are delivered on the threads of the HttpClient, so implementations must be thread-safe and should return quickly.
+ * Exceptions thrown by a listener are ignored. <br>
+ * Results served from a cache or shared with a coalesced request don't send a request and therefore don't cause events.
+ * <br>
+ * The order of the events of one request is: {@link #onRequestStart(Request)}, then for every attempt optionally
+ * {@link #onRateLimitWait(Request, long)}, {@link #onResponseHeaders(Request, int, int, long)}, {@link #onBytesReceived(Request, long)},
+ * {@link #onBodyComplete(Request, int, long)} and {@link #onRetry(Request, int, int, Throwable, long)} or {@link #onFailover(Request, String, int, Throwable)},
+ * and finally {@link #onComplete(Request, int, long, Throwable)}.
+ *
+ * @see de.joshicodes.aghpb4j.AGHPB.Builder#addRequestListener(RequestListener)
+ * @see de.joshicodes.aghpb4j.metrics.MetricsRecorder
+ */
+public interface RequestListener {
+
+    /**
+     * A request, which is sent by an AGHPB instance.
+     * @param id A number, which identifies the request in the events of this instance.
+     * @param endpoint The path of the request relative to the url of the API, with ids replaced by <code>{id}</code>, e.g. <code>/get/id/{id}</code>.
+     * @param method The HTTP method.
+     * @param uri The full uri of the request.
+     */
+    record Request(long id, String endpoint, String method, URI uri) { }
+
+    /**
+     * Called once, before the first attempt of a request.
+     * @param request The request.
+     */
+    default void onRequestStart(final Request request) { }
+
+    /**
+     * Called, if an attempt had to wait for a permit of the {@link RateLimiter}.
+     * @param request The request.
+     * @param waitNanos The time waited in nanoseconds.
+     */
+    default void onRateLimitWait(final Request request, final long waitNanos) { }
+
+    /**
+     * Called, when the status and the headers of a response arrived.
+     * The time includes resolving the host and connecting, as the HttpClient does not report them separately.
+     * @param request The request.
+     * @param attempt The number of the attempt, starting at 1.
+     * @param statusCode The status code.
+     * @param timeToHeadersNanos The time from sending the attempt until the headers arrived, in nanoseconds.
+     */
+    default void onResponseHeaders(final Request request, final int attempt, final int statusCode, final long timeToHeadersNanos) { }
+
+    /**
+     * Called for every chunk of the response body, which was received.
+     * @param request The request.
+     * @param bytes The size of the chunk in bytes.
+     */
+    default void onBytesReceived(final Request request, final long bytes) { }
+
+    /**
+     * Called when the body of a response was received completely.
+     * @param request The request.
+     * @param attempt The number of the attempt, starting at 1.
+     * @param transferNanos The time from the arrival of the headers until the end of the body, in nanoseconds.
+     */
+    default void onBodyComplete(final Request request, final int attempt, final long transferNanos) { }
+
+    /**
+     * Called, when a failed attempt will be retried.
+     * @param request The request.
+     * @param retry The number of the retry, starting at 1.
+     * @param statusCode The status code of the failed attempt, or -1 if it failed with an error.
+     * @param error The error of the failed attempt, or null.
+     * @param delayMillis The delay before the retry in milliseconds.
+     */
+    default void onRetry(final Request request, final int retry, final int statusCode, final Throwable error, final long delayMillis) { }
+
+    /**
+     * Called, when a failed attempt is sent to another endpoint of the {@link EndpointPool} right away. This does not count as a retry.
+     * @param request The request.
+     * @param endpoint The url of the endpoint, which failed.
+     * @param statusCode The status code of the failed attempt, or -1 if it failed with an error.
+     * @param error The error of the failed attempt, or null.
+     */
+    default void onFailover(final Request request, final String endpoint, final int statusCode, final Throwable error) { }
+
+    /**
+     * Called once, when the request is finished. <br>
+     * For responses, which are read as a stream, this is called when the response is handed over, which may be before the body was read.
+     * @param request The request.
+     * @param statusCode The status code of the last response, or -1 if the request failed with an error.
+     * @param durationNanos The time from the start of the request, including all retries and waits, in nanoseconds.
+     * @param error The error, or null if a response was received.
+     */
+    default void onComplete(final Request request, final int statusCode, final long durationNanos, final Throwable error) { }
+
+}
@@ -0,0 +1,202 @@
+package de.joshicodes.aghpb4j.request;
+
+import java.io.IOException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Decides if and when a failed request is retried. <br>
+ * The delay between two attempts grows exponentially with each retry and is randomized with jitter,
+ * so that many clients retrying at the same time don't hit the API in waves. <br>
+ * Instances are immutable and can be shared.
+ *
+ * @see #builder()
+ */
+public class RetryPolicy {
+
+    /**
+     * The default policy. Retries up to 3 times on I/O errors and 500, 502, 503 and 504, starting with 200 milliseconds. <br>
+     * Requests, which timed out after they were sent, or were cancelled, are not retried.
+     */
+    public static final RetryPolicy DEFAULT = builder().build();
+
+    /**
+     * A policy, which never retries.
+     */
+    public static final RetryPolicy NONE = builder().setMaxRetries(0).build();
+
+    private final int maxRetries;
+    private final Duration baseDelay;
+    private final Duration maxDelay;
+    private final double multiplier;
+    private final double jitter;
+    private final IntPredicate retryableStatus;
+    private final Predicate<Throwable> retryableError;
+
+    private RetryPolicy(final Builder builder) {
+        this.maxRetries = builder.maxRetries;
+        this.baseDelay = builder.baseDelay;
+        this.maxDelay = builder.maxDelay;
+        this.multiplier = builder.multiplier;
+        this.jitter = builder.jitter;
+        this.retryableStatus = builder.retryableStatus;
+        this.retryableError = builder.retryableError;
+    }
+
+    /**
+     * Creates a new Builder for a RetryPolicy.
+     * @return The new Builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the maximum amount of retries. The request is sent at most <code>maxRetries + 1</code> times.
+     * @return The maximum amount of retries.
+     */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Returns whether a response with the given status code should be retried.
+     * @param statusCode The status code of the response.
+     * @return true, if the request should be retried.
+     */
+    public boolean isRetryable(final int statusCode) {
+        return retryableStatus.test(statusCode);
+    }
+
+    /**
+     * Returns whether a request, which failed with the given error, should be retried.
+     * @param error The error.
+     * @return true, if the request should be retried.
+     */
+    public boolean isRetryable(final Throwable error) {
+        return retryableError.test(error);
+    }
+
+    /**
+     * Returns the delay before the given retry. <br>
+     * The delay is <code>baseDelay * multiplier^(retry - 1)</code>, capped at the max delay, of which up to the jitter fraction is randomly removed.
+     * @param retry The number of the retry, starting at 1.
+     * @return The delay in milliseconds.
+     */
+    public long getDelay(final int retry) {
+        final double exponential = baseDelay.toMillis() * Math.pow(multiplier, Math.max(0, retry - 1));
+        final long capped = (long) Math.min(exponential, maxDelay.toMillis());
+        if(jitter <= 0 || capped <= 0) return capped;
+        final long jitterMillis = (long) (capped * jitter);
+        return capped - ThreadLocalRandom.current().nextLong(jitterMillis + 1);
+    }
+
+    public static class Builder {
+
+        private int maxRetries = 3;
+        private Duration baseDelay = Duration.ofMillis(200);
+        private Duration maxDelay = Duration.ofSeconds(10);
+        private double multiplier = 2;
+        private double jitter = 0.5;
+        private IntPredicate retryableStatus = status -> status == 500 || status == 502 || status == 503 || status == 504;
+        private Predicate<Throwable> retryableError = Builder::isIOError;
+
+        private Builder() { }
+
+        /**
+         * Sets the maximum amount of retries. Defaults to 3.
+         * @param maxRetries The maximum amount of retries. 0 disables retries.
+         * @return This Builder.
+         */
+        public Builder setMaxRetries(final int maxRetries) {
+            if(maxRetries < 0) throw new IllegalArgumentException("maxRetries cannot be negative.");
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * Sets the delay before the first retry. Defaults to 200 milliseconds.
+         * @param baseDelay The delay.
+         * @return This Builder.
+         */
+        public Builder setBaseDelay(final Duration baseDelay) {
+            if(baseDelay == null || baseDelay.isNegative()) throw new IllegalArgumentException("baseDelay cannot be null or negative.");
+            this.baseDelay = baseDelay;
+            return this;
+        }
+
+        /**
+         * Sets the maximum delay between two attempts. Defaults to 10 seconds.
+         * @param maxDelay The maximum delay.
+         * @return This Builder.
+         */
+        public Builder setMaxDelay(final Duration maxDelay) {
+            if(maxDelay == null || maxDelay.isNegative()) throw new IllegalArgumentException("maxDelay cannot be null or negative.");
+            this.maxDelay = maxDelay;
+            return this;
+        }
+
+        /**
+         * Sets the factor, by which the delay grows with each retry. Defaults to 2.
+         * @param multiplier The multiplier. Must be at least 1.
+         * @return This Builder.
+         */
+        public Builder setMultiplier(final double multiplier) {
+            if(multiplier < 1) throw new IllegalArgumentException("multiplier must be at least 1.");
+            this.multiplier = multiplier;
+            return this;
+        }
+
+        /**
+         * Sets the fraction of the delay, which is randomized. Defaults to 0.5. <br>
+         * With a jitter of 0.5, a delay of 400 milliseconds becomes a random delay between 200 and 400 milliseconds.
+         * @param jitter The jitter between 0 (no jitter) and 1 (full jitter).
+         * @return This Builder.
+         */
+        public Builder setJitter(final double jitter) {
+            if(jitter < 0 || jitter > 1) throw new IllegalArgumentException("jitter must be between 0 and 1.");
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * Sets the rule, which decides which status codes are retried. Defaults to 500, 502, 503 and 504.
+         * @param retryableStatus The rule.
+         * @return This Builder.
+         */
+        public Builder setRetryableStatus(final IntPredicate retryableStatus) {
+            if(retryableStatus == null) throw new IllegalArgumentException("retryableStatus cannot be null.");
+            this.retryableStatus = retryableStatus;
+            return this;
+        }
+
+        /**
+         * Sets the rule, which decides which errors (e.g. connection errors) are retried. <br>
+         * Defaults to all {@link IOException}s except {@link HttpTimeoutException}s, as the request has already been sent and waiting longer won't help.
+         * Connect timeouts are retried, as nothing has been sent yet. {@link CancellationException}s are never retried by default.
+         * @param retryableError The rule.
+         * @return This Builder.
+         */
+        public Builder setRetryableError(final Predicate<Throwable> retryableError) {
+            if(retryableError == null) throw new IllegalArgumentException("retryableError cannot be null.");
+            this.retryableError = retryableError;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+
+        private static boolean isIOError(final Throwable error) {
+            if(error instanceof HttpConnectTimeoutException) return true;
+            return error instanceof IOException && !(error instanceof HttpTimeoutException);
+        }
+
+    }
+
+}
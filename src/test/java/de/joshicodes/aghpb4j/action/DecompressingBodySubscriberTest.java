@@ -0,0 +1,284 @@
+package de.joshicodes.aghpb4j.action;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DecompressingBodySubscriberTest {
+
+    private static final byte[] PLAIN = text(200_000);
+
+    private static byte[] text(final int length) {
+        final StringBuilder builder = new StringBuilder();
+        int i = 0;
+        while(builder.length() < length) {
+            builder.append("{\"search_id\":").append(i).append(",\"name\":\"Book ").append(i++).append("\"},");
+        }
+        return builder.substring(0, length).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(final byte[] plain) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(plain);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(final byte[] plain, final boolean raw) {
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+        deflater.setInput(plain);
+        deflater.finish();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        while(!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(final byte[]... parts) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for(byte[] part : parts) out.writeBytes(part);
+        return out.toByteArray();
+    }
+
+    /**
+     * Publishes the body in items of the given size, one item per request, and completes after the last item.
+     */
+    private static final class Publisher implements Flow.Subscription {
+
+        private final Flow.Subscriber<List<ByteBuffer>> subscriber;
+        private final Deque<ByteBuffer> items = new ArrayDeque<>();
+        private long demand = 0;
+        private boolean emitting = false;
+        private boolean done = false;
+        private int delivered = 0;
+
+        private Publisher(final Flow.Subscriber<List<ByteBuffer>> subscriber, final byte[] body, final int itemSize) {
+            this.subscriber = subscriber;
+            for(int offset = 0; offset < body.length; offset += itemSize) {
+                items.add(ByteBuffer.wrap(Arrays.copyOfRange(body, offset, Math.min(body.length, offset + itemSize))).asReadOnlyBuffer());
+            }
+        }
+
+        private void start() {
+            subscriber.onSubscribe(this);
+            if(items.isEmpty()) {
+                done = true;
+                subscriber.onComplete();
+            }
+        }
+
+        @Override
+        public void request(final long n) {
+            demand += n;
+            if(emitting) return;
+            emitting = true;
+            while(demand > 0 && !done && !items.isEmpty()) {
+                demand--;
+                delivered++;
+                subscriber.onNext(List.of(items.poll()));
+                if(items.isEmpty() && !done) {
+                    done = true;
+                    subscriber.onComplete();
+                }
+            }
+            emitting = false;
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+        }
+
+    }
+
+    /**
+     * Records the items and requests them one by one, up to a limit.
+     */
+    private static final class Recorder implements HttpResponse.BodySubscriber<byte[]> {
+
+        private final CompletableFuture<byte[]> body = new CompletableFuture<>();
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final List<Integer> sizes = new ArrayList<>();
+        private final int limit;
+        private int maxItems = 0;
+        private Flow.Subscription subscription;
+
+        private Recorder(final int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public CompletionStage<byte[]> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(final List<ByteBuffer> items) {
+            maxItems = Math.max(maxItems, items.size());
+            for(ByteBuffer item : items) {
+                sizes.add(item.remaining());
+                final byte[] bytes = new byte[item.remaining()];
+                item.get(bytes);
+                out.writeBytes(bytes);
+            }
+            if(sizes.size() < limit) subscription.request(1);
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            body.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            body.complete(out.toByteArray());
+        }
+
+    }
+
+    private static byte[] decode(final byte[] body, final boolean gzip, final int itemSize) throws Exception {
+        final HttpResponse.BodySubscriber<byte[]> downstream = HttpResponse.BodySubscribers.ofByteArray();
+        new Publisher(new DecompressingBodySubscriber<>(downstream, gzip), body, itemSize).start();
+        return downstream.getBody().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    private static Throwable decodeError(final byte[] body, final boolean gzip) {
+        final ExecutionException e = assertThrows(ExecutionException.class, () -> decode(body, gzip, 4096));
+        return e.getCause();
+    }
+
+    @Test
+    void decodesGzip() throws Exception {
+        final byte[] body = gzip(PLAIN);
+        assertArrayEquals(PLAIN, decode(body, true, body.length));
+        assertArrayEquals(PLAIN, decode(body, true, 1000));
+        // Headers and trailers split over several items
+        assertArrayEquals(PLAIN, decode(body, true, 1));
+    }
+
+    @Test
+    void decodesMultipleGzipMembers() throws Exception {
+        final byte[] first = Arrays.copyOfRange(PLAIN, 0, 70_000);
+        final byte[] second = Arrays.copyOfRange(PLAIN, 70_000, PLAIN.length);
+        final byte[] body = concat(gzip(first), gzip(second), gzip(new byte[0]));
+        assertArrayEquals(PLAIN, decode(body, true, 777));
+        assertArrayEquals(PLAIN, decode(body, true, 3));
+    }
+
+    @Test
+    void acceptsZeroPaddingAfterTheLastMember() throws Exception {
+        final byte[] body = concat(gzip(PLAIN), new byte[512]);
+        assertArrayEquals(PLAIN, decode(body, true, 1000));
+        assertArrayEquals(PLAIN, decode(body, true, 1));
+    }
+
+    @Test
+    void rejectsWrongCrc() throws IOException {
+        final byte[] body = gzip(PLAIN);
+        body[body.length - 8] ^= 1;
+        final Throwable error = decodeError(body, true);
+        assertInstanceOf(IOException.class, error);
+        assertTrue(error.getMessage().contains("CRC32"), error.getMessage());
+    }
+
+    @Test
+    void rejectsWrongSize() throws IOException {
+        final byte[] body = gzip(PLAIN);
+        body[body.length - 4] ^= 1;
+        final Throwable error = decodeError(body, true);
+        assertInstanceOf(IOException.class, error);
+        assertTrue(error.getMessage().contains("size"), error.getMessage());
+    }
+
+    @Test
+    void rejectsTruncatedBody() throws IOException {
+        final byte[] body = gzip(PLAIN);
+        assertInstanceOf(EOFException.class, decodeError(Arrays.copyOf(body, body.length - 3), true));
+        final byte[] deflated = deflate(PLAIN, false);
+        assertInstanceOf(EOFException.class, decodeError(Arrays.copyOf(deflated, deflated.length / 2), false));
+    }
+
+    @Test
+    void rejectsGarbageBetweenMembers() throws IOException {
+        final byte[] body = concat(gzip(PLAIN), new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 });
+        assertInstanceOf(IOException.class, decodeError(body, true));
+    }
+
+    @Test
+    void decodesZlibAndRawDeflate() throws Exception {
+        final byte[] zlib = deflate(PLAIN, false);
+        final byte[] raw = deflate(PLAIN, true);
+        assertArrayEquals(PLAIN, decode(zlib, false, zlib.length));
+        assertArrayEquals(PLAIN, decode(raw, false, raw.length));
+        // The format is detected from the first two bytes, even if they arrive separately
+        assertArrayEquals(PLAIN, decode(zlib, false, 1));
+        assertArrayEquals(PLAIN, decode(raw, false, 1));
+    }
+
+    @Test
+    void completesEmptyBody() throws Exception {
+        assertEquals(0, decode(new byte[0], true, 1).length);
+        assertEquals(0, decode(new byte[0], false, 1).length);
+    }
+
+    @Test
+    void emitsBoundedChunks() throws Exception {
+        final byte[] plain = new byte[1_000_000];
+        final byte[] body = gzip(plain);
+        final Recorder recorder = new Recorder(Integer.MAX_VALUE);
+        // The whole compressed body arrives as one item
+        new Publisher(new DecompressingBodySubscriber<>(recorder, true), body, body.length).start();
+        assertArrayEquals(plain, recorder.getBody().toCompletableFuture().get(5, TimeUnit.SECONDS));
+        assertEquals(1, recorder.maxItems);
+        for(int i = 0; i < recorder.sizes.size() - 1; i++) {
+            assertEquals(DecompressingBodySubscriber.CHUNK_SIZE, recorder.sizes.get(i));
+        }
+        assertEquals(plain.length % DecompressingBodySubscriber.CHUNK_SIZE, recorder.sizes.get(recorder.sizes.size() - 1));
+    }
+
+    @Test
+    void requestsInputOnlyWhenNeeded() throws IOException {
+        final byte[] body = gzip(new byte[1_000_000]);
+        final Recorder recorder = new Recorder(2);
+        final Publisher publisher = new Publisher(new DecompressingBodySubscriber<>(recorder, true), body, 100);
+        publisher.start();
+        // Two chunks of zeros are inflated from the first few items, the rest is not requested
+        assertEquals(2, recorder.sizes.size());
+        assertTrue(publisher.delivered < 5, "Delivered " + publisher.delivered + " items");
+        assertTrue(body.length / 100 > 5);
+    }
+
+}
@@ -0,0 +1,85 @@
+package de.joshicodes.aghpb4j.action;
+
+import de.joshicodes.aghpb4j.objects.AGHPBook;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SearchResultReaderTest {
+
+    private static String book(final String searchId, final String name) {
+        return "{\"search_id\":" + searchId + ",\"name\":" + name + ",\"category\":\"Java\",\"date_added\":\"2023\",\"commit_url\":\"u\",\"commit_author\":\"a\",\"commit_hash\":\"h\"}";
+    }
+
+    private static List<AGHPBook> read(final String json) {
+        final List<AGHPBook> books = new ArrayList<>();
+        try (SearchResultReader reader = new SearchResultReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)))) {
+            reader.forEachRemaining(books::add);
+        } catch (java.io.IOException e) {
+            throw new AssertionError(e);
+        }
+        return books;
+    }
+
+    @Test
+    void readsBooks() {
+        final List<AGHPBook> books = read("[" + book("\"1\"", "\"One\"") + "," + book("2", "\"Two\"") + "]");
+        assertEquals(2, books.size());
+        assertEquals(1, books.get(0).searchId());
+        assertEquals("Two", books.get(1).bookName());
+        assertEquals("Java", books.get(1).category());
+    }
+
+    @Test
+    void skipsNonObjectElements() {
+        final List<AGHPBook> books = read("[1,\"text\",null,[" + book("3", "\"Nested\"") + "]," + book("4", "\"Four\"") + "]");
+        assertEquals(1, books.size());
+        assertEquals(4, books.get(0).searchId());
+    }
+
+    @Test
+    void skipsInvalidSearchIds() {
+        final List<AGHPBook> books = read("[" + book("\"abc\"", "\"Bad\"") + "," + book("1.5", "\"Fraction\"") + "," + book("{\"id\":1}", "\"Object\"") + "," + book("true", "\"Boolean\"") + "," + book("5", "\"Five\"") + "]");
+        assertEquals(1, books.size());
+        assertEquals(5, books.get(0).searchId());
+    }
+
+    @Test
+    void skipsNullAndMissingFields() {
+        final List<AGHPBook> books = read("[" + book("6", "null") + ",{\"search_id\":7,\"name\":\"Missing\"}," + book("null", "\"NoId\"") + "," + book("8", "\"Eight\"") + "]");
+        assertEquals(1, books.size());
+        assertEquals(8, books.get(0).searchId());
+    }
+
+    @Test
+    void ignoresUnknownFields() {
+        final List<AGHPBook> books = read("[{\"extra\":{\"a\":[1,2]}," + book("9", "\"Nine\"").substring(1) + "]");
+        assertEquals(1, books.size());
+        assertEquals(9, books.get(0).searchId());
+    }
+
+    @Test
+    void emptyArray() {
+        assertEquals(0, read("[]").size());
+    }
+
+    @Test
+    void rejectsNonArray() {
+        assertThrows(IllegalStateException.class, () -> read("{\"detail\":\"error\"}"));
+    }
+
+    @Test
+    void hasNextIsFalseAfterEnd() {
+        final SearchResultReader reader = new SearchResultReader(new ByteArrayInputStream(("[" + book("1", "\"One\"") + "]").getBytes(StandardCharsets.UTF_8)));
+        reader.next();
+        assertFalse(reader.hasNext());
+    }
+
+}
@@ -0,0 +1,131 @@
+package de.joshicodes.aghpb4j.cache;
+
+import de.joshicodes.aghpb4j.objects.AGHPBook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DiskImageCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private static AGHPBook book(final int searchId, final String commitHash, final int size) {
+        final byte[] image = new byte[size];
+        for(int i = 0; i < size; i++) image[i] = (byte) (i * 31 + searchId);
+        return new AGHPBook(image, AGHPBook.BookImageType.PNG, "Java", "author", commitHash, "url", "Book " + searchId, searchId);
+    }
+
+    private long fileSize() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.findFirst().map(path -> path.toFile().length()).orElseThrow();
+        }
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        final DiskImageCache cache = new DiskImageCache(directory, 1 << 20);
+        final AGHPBook book = book(1, "abc", 1000);
+        cache.put(book);
+        final AGHPBook read = new DiskImageCache(directory, 1 << 20).get(1, AGHPBook.BookImageType.PNG);
+        assertNotNull(read);
+        assertArrayEquals(book.imageBytes(), read.imageBytes());
+        assertEquals("Book 1", read.bookName());
+        assertEquals("abc", read.commitHash());
+    }
+
+    @Test
+    void roundTripEmptyImage() throws IOException {
+        final DiskImageCache cache = new DiskImageCache(directory, 1 << 20);
+        cache.put(book(1, "abc", 0));
+        final AGHPBook read = new DiskImageCache(directory, 1 << 20).get(1, AGHPBook.BookImageType.PNG);
+        assertNotNull(read);
+        assertEquals(0, read.imageSize());
+        assertEquals("Book 1", read.bookName());
+    }
+
+    @Test
+    void dropsFilesWithBrokenStringLengths() throws IOException {
+        final DiskImageCache cache = new DiskImageCache(directory, 1 << 20);
+        cache.put(book(1, "abc", 100));
+        final Path file;
+        try (Stream<Path> files = Files.list(directory)) {
+            file = files.findFirst().orElseThrow();
+        }
+        // The length of the category follows the magic, the version, the search id and the type
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, Integer.MAX_VALUE - 8), 10);
+        }
+        assertNull(cache.get(1, AGHPBook.BookImageType.PNG));
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void rejectsOtherCommits() throws IOException {
+        final DiskImageCache cache = new DiskImageCache(directory, 1 << 20);
+        cache.put(book(1, "abc", 100));
+        assertNotNull(cache.get(1, AGHPBook.BookImageType.PNG, "abc"));
+        assertNull(cache.get(1, AGHPBook.BookImageType.PNG, "def"));
+        cache.put(book(1, "def", 100));
+        assertEquals("def", cache.get(1, AGHPBook.BookImageType.PNG).commitHash());
+        assertEquals(1, cache.getStats().size());
+    }
+
+    @Test
+    void readsDontTouchTheFiles() throws IOException {
+        final DiskImageCache cache = new DiskImageCache(directory, 1 << 20);
+        cache.put(book(1, "abc", 100));
+        final Path file;
+        try (Stream<Path> files = Files.list(directory)) {
+            file = files.findFirst().orElseThrow();
+        }
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1000));
+        cache.get(1, AGHPBook.BookImageType.PNG);
+        assertEquals(1000, Files.getLastModifiedTime(file).toMillis());
+        cache.flush();
+        assertEquals(System.currentTimeMillis(), Files.getLastModifiedTime(file).toMillis(), 60_000);
+    }
+
+    @Test
+    void recencySurvivesRestart() throws IOException {
+        final DiskImageCache cache = new DiskImageCache(directory, 1 << 20);
+        cache.put(book(1, "a", 1000));
+        final long entrySize = fileSize();
+        cache.put(book(2, "b", 1000));
+        cache.put(book(3, "c", 1000));
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(path -> {
+                try {
+                    Files.setLastModifiedTime(path, FileTime.fromMillis(1000));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        // Book 1 is the most recently used one
+        cache.get(1, AGHPBook.BookImageType.PNG);
+        cache.get(3, AGHPBook.BookImageType.PNG);
+        cache.flush();
+        final DiskImageCache restarted = new DiskImageCache(directory, entrySize * 3);
+        restarted.put(book(4, "d", 1000));
+        assertNull(restarted.get(2, AGHPBook.BookImageType.PNG));
+        assertNotNull(restarted.get(1, AGHPBook.BookImageType.PNG));
+        assertNotNull(restarted.get(3, AGHPBook.BookImageType.PNG));
+        assertNotNull(restarted.get(4, AGHPBook.BookImageType.PNG));
+    }
+
+}
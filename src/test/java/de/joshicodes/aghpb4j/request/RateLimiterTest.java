@@ -0,0 +1,117 @@
+package de.joshicodes.aghpb4j.request;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpHeaders;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+    private static HttpHeaders headers(final int limit, final int remaining, final String reset) {
+        final Map<String, List<String>> map = new HashMap<>();
+        if(limit >= 0) map.put(RateLimiter.HEADER_LIMIT, List.of(String.valueOf(limit)));
+        if(remaining >= 0) map.put(RateLimiter.HEADER_REMAINING, List.of(String.valueOf(remaining)));
+        if(reset != null) map.put(RateLimiter.HEADER_RESET, List.of(reset));
+        return HttpHeaders.of(map, (name, value) -> true);
+    }
+
+    private static String epochSeconds(final long millisFromNow) {
+        return String.valueOf((System.currentTimeMillis() + millisFromNow) / 1000);
+    }
+
+    @Test
+    void letsRequestsThroughWithoutHeaders() {
+        final RateLimiter limiter = new RateLimiter(ForkJoinPool.commonPool());
+        for(int i = 0; i < 100; i++) {
+            assertTrue(limiter.acquire().isDone());
+        }
+        limiter.update(headers(-1, -1, null), false);
+        assertEquals(-1, limiter.getRemaining());
+        assertEquals(0, limiter.getDelay());
+    }
+
+    @Test
+    void queuesOnceTheBucketIsEmpty() {
+        final RateLimiter limiter = new RateLimiter(ForkJoinPool.commonPool());
+        limiter.update(headers(10, 2, epochSeconds(60_000)), false);
+        assertTrue(limiter.acquire().isDone());
+        assertTrue(limiter.acquire().isDone());
+        final CompletableFuture<Void> waiting = limiter.acquire();
+        assertFalse(waiting.isDone());
+        assertEquals(1, limiter.getQueueSize());
+        assertTrue(limiter.getDelay() > 0);
+    }
+
+    @Test
+    void keepsTheLowestRemainingOfOneWindow() {
+        final RateLimiter limiter = new RateLimiter(ForkJoinPool.commonPool());
+        final String reset = epochSeconds(60_000);
+        limiter.update(headers(10, 5, reset), false);
+        // An older response of the same window arrives late
+        limiter.update(headers(10, 7, reset), false);
+        assertEquals(5, limiter.getRemaining());
+        limiter.update(headers(10, 3, reset), false);
+        assertEquals(3, limiter.getRemaining());
+    }
+
+    @Test
+    void emptiesTheBucketOnTooManyRequests() {
+        final RateLimiter limiter = new RateLimiter(ForkJoinPool.commonPool());
+        limiter.update(headers(10, 5, epochSeconds(60_000)), true);
+        assertEquals(0, limiter.getRemaining());
+        assertFalse(limiter.acquire().isDone());
+    }
+
+    @Test
+    void refillsAfterTheResetAndReconcilesWithTheNextWindow() throws Exception {
+        final RateLimiter limiter = new RateLimiter(ForkJoinPool.commonPool());
+        // Relative reset in 0.3 seconds
+        limiter.update(headers(3, 1, "0.3"), false);
+        assertTrue(limiter.acquire().isDone());
+        final CompletableFuture<Void> waiting = limiter.acquire();
+        assertFalse(waiting.isDone());
+        // Released by the local refill to the limit, before the API told us about the new window
+        waiting.get(5, TimeUnit.SECONDS);
+        assertEquals(2, limiter.getRemaining());
+        // The first response of the new window doesn't know about the requests, which are still in flight
+        limiter.update(headers(3, 3, epochSeconds(60_000)), false);
+        assertEquals(2, limiter.getRemaining());
+    }
+
+    @Test
+    void ignoresResponsesOfTheOldWindowAfterARefill() throws Exception {
+        final RateLimiter limiter = new RateLimiter(ForkJoinPool.commonPool());
+        final String oldReset = String.valueOf((System.currentTimeMillis() + 300) / 1000);
+        limiter.update(headers(10, 1, "0.3"), false);
+        assertTrue(limiter.acquire().isDone());
+        final CompletableFuture<Void> waiting = limiter.acquire();
+        waiting.get(5, TimeUnit.SECONDS);
+        assertEquals(9, limiter.getRemaining());
+        // Responses, which were sent before the refill, arrive late
+        limiter.update(headers(10, 0, "0"), false);
+        assertEquals(9, limiter.getRemaining());
+        limiter.update(headers(10, 0, oldReset), false);
+        assertEquals(9, limiter.getRemaining());
+        assertEquals(0, limiter.getDelay());
+    }
+
+    @Test
+    void ignoresResponsesOfAnOlderWindow() {
+        final RateLimiter limiter = new RateLimiter(ForkJoinPool.commonPool());
+        limiter.update(headers(10, 8, epochSeconds(60_000)), false);
+        // A response, which was sent before the window changed, arrives late
+        limiter.update(headers(10, 0, epochSeconds(-5_000)), false);
+        assertEquals(8, limiter.getRemaining());
+        assertTrue(limiter.acquire().isDone());
+    }
+
+}
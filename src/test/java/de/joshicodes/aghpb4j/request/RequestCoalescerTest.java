@@ -0,0 +1,77 @@
+package de.joshicodes.aghpb4j.request;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestCoalescerTest {
+
+    private static final RequestCoalescer.Key KEY = new RequestCoalescer.Key("https://example.com/", "GET", null, String.class);
+
+    @Test
+    void sharesOneRequest() {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final CompletableFuture<String> exchange = new CompletableFuture<>();
+        final AtomicInteger sent = new AtomicInteger();
+        final CompletableFuture<String> first = coalescer.coalesce(KEY, () -> { sent.incrementAndGet(); return exchange; });
+        final CompletableFuture<String> second = coalescer.coalesce(KEY, () -> { sent.incrementAndGet(); return new CompletableFuture<>(); });
+        assertNotSame(first, second);
+        assertEquals(1, sent.get());
+        assertEquals(1, coalescer.getCoalesced());
+        exchange.complete("result");
+        assertEquals("result", first.join());
+        assertEquals("result", second.join());
+        assertEquals(0, coalescer.getInFlight());
+    }
+
+    @Test
+    void cancellingOneCallerKeepsTheRequest() {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final CompletableFuture<String> exchange = new CompletableFuture<>();
+        final CompletableFuture<String> first = coalescer.coalesce(KEY, () -> exchange);
+        final CompletableFuture<String> second = coalescer.coalesce(KEY, CompletableFuture::new);
+        first.cancel(true);
+        assertFalse(exchange.isDone());
+        exchange.complete("result");
+        assertEquals("result", second.join());
+    }
+
+    @Test
+    void cancelsRequestOnceEveryCallerLeft() {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final CompletableFuture<String> exchange = new CompletableFuture<>();
+        final CompletableFuture<String> first = coalescer.coalesce(KEY, () -> exchange);
+        final CompletableFuture<String> second = coalescer.coalesce(KEY, CompletableFuture::new);
+        first.cancel(true);
+        second.completeExceptionally(new IllegalStateException("timed out"));
+        assertTrue(exchange.isCancelled());
+        assertEquals(0, coalescer.getInFlight());
+        // The next caller sends a new request
+        final CompletableFuture<String> next = new CompletableFuture<>();
+        final CompletableFuture<String> third = coalescer.coalesce(KEY, () -> next);
+        next.complete("new");
+        assertEquals("new", third.join());
+    }
+
+    @Test
+    void followerLeavingWhileStartingKeepsTheRequest() {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final CompletableFuture<String> exchange = new CompletableFuture<>();
+        final CompletableFuture<?>[] caller = new CompletableFuture<?>[1];
+        caller[0] = coalescer.coalesce(KEY, () -> {
+            // A second caller joins and leaves, before the request has been started
+            coalescer.coalesce(KEY, CompletableFuture::new).cancel(true);
+            return exchange;
+        });
+        assertFalse(exchange.isDone());
+        caller[0].cancel(true);
+        assertTrue(exchange.isCancelled());
+    }
+
+}
@@ -0,0 +1,36 @@
+package de.joshicodes.aghpb4j.request;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryPolicyTest {
+
+    @Test
+    void retriesIOErrorsByDefault() {
+        assertTrue(RetryPolicy.DEFAULT.isRetryable(new IOException("reset")));
+        assertTrue(RetryPolicy.DEFAULT.isRetryable(new ConnectException("refused")));
+        assertTrue(RetryPolicy.DEFAULT.isRetryable(new HttpConnectTimeoutException("connect timed out")));
+    }
+
+    @Test
+    void doesNotRetryTimeoutsAndCancellation() {
+        assertFalse(RetryPolicy.DEFAULT.isRetryable(new HttpTimeoutException("timed out")));
+        assertFalse(RetryPolicy.DEFAULT.isRetryable(new CancellationException()));
+        assertFalse(RetryPolicy.DEFAULT.isRetryable(new IllegalStateException("bug")));
+    }
+
+    @Test
+    void retriesServerErrors() {
+        assertTrue(RetryPolicy.DEFAULT.isRetryable(503));
+        assertFalse(RetryPolicy.DEFAULT.isRetryable(404));
+    }
+
+}